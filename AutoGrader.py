@@ -12,30 +12,132 @@ GitHub Repository: https://github.com/T-Mose/AutomatedGrading
 """
 
 import os
+import re
+import csv
+import math
+import hashlib
+import json
 import subprocess
 import git
 import pandas as pd
 import threading
+import queue
 import sys
 import time
-from github import Github
-from openai import OpenAI
+import random
+from github import Github, GithubException, RateLimitExceededException
+from openai import (
+    OpenAI,
+    APIConnectionError,
+    APIStatusError,
+    InternalServerError,
+    RateLimitError,
+)
 from datetime import datetime, timedelta
 import shutil
+from concurrent.futures import Future, ThreadPoolExecutor
+from contextlib import contextmanager, nullcontext
 from dotenv import load_dotenv
 
 FAIL_TIMER = 100
 TIMEOUT_SECONDS = 60  # Timeout value for subprocesses (in seconds)
-
-# Check for input parameters
-if len(sys.argv) < 2 or not sys.argv[1].isdigit() or int(sys.argv[1]) <= 0:
-    print("Usage: python script_name.py <task_number> [Y/N] [Y/N] [Y/N]")
+TEST_TIMEOUT_SECONDS = {"16": 120, "18": 120, "19": 180}  # Longer unit test timeouts for tasks with performance tests
+# JVM flags of the unit test run, e.g. a heap limit for tests that check memory use.
+# Tests with flags of their own run in a fresh JVM, also with --daemon.
+TEST_JVM_FLAGS = {"18": ["-Xmx512m"]}
+PERFORMANCE_PREFIX = "[perf] "  # Test output lines that go to the Performance column
+BENCHMARK_TIMEOUT_SECONDS = 600  # Timeout of the JMH run of one student
+# Benchmark parameters whose other values are compared with one value, and whether
+# results slower than that value are flagged: every implementation is compared with
+# Arrays.sort, every insertion sort cutoff with the plain quicksort, every set
+# with the boxed HashSet, and every way to build a tree with repeated insert
+BENCHMARK_BASELINES = {"implementation": ("Arrays.sort", False), "cutoff": ("plain", True),
+                       "set": ("HashSet", False), "build": ("insert", False)}
+BENCHMARK_SLOWER_RATIO = 0.95  # Flag results below this fraction of their baseline, not mere noise
+# JMH options for grading: one fork and short iterations. The inputs of each benchmark
+# are narrowed down by the parameters in the task's benchmark/grading_params.txt
+BENCHMARK_OPTIONS = ["-f", "1", "-wi", "2", "-w", "200ms", "-i", "3", "-r", "200ms"]
+BENCHMARK_PARAMS_FILE = "grading_params.txt"
+JMH_JARS = ["jmh-core-1.37.jar", "jmh-generator-annprocess-1.37.jar",
+            "jopt-simple-5.0.4.jar", "commons-math3-3.6.1.jar"]
+DEFAULT_WORKERS = os.cpu_count() or 1  # Number of students graded concurrently
+DEFAULT_GPT_WORKERS = 4  # Number of GPT requests in flight at the same time
+GPT_MODEL = "gpt-5-nano-2025-08-07"
+GPT_PROMPT_VERSION = 1  # Bump when the prompts change so cached analyses are not reused
+GPT_MAX_ATTEMPTS = 5  # Attempts per GPT request before giving up
+GPT_BACKOFF_SECONDS = 2  # Base delay of the exponential backoff between attempts
+GPT_TIMEOUT_SECONDS = 120  # Timeout of a single GPT request
+GPT_ERROR_MESSAGE = "Kunde inte generera analys på grund av ett fel med OpenAI API."
+ISSUE_WRITE_INTERVAL = 1.0  # Seconds between issue creations, as GitHub asks of API writes
+ISSUE_MAX_ATTEMPTS = 5  # Attempts per issue before leaving it for the next run
+ISSUE_BACKOFF_SECONDS = 5  # Base delay of the exponential backoff after a failed attempt
+ISSUE_RATE_LIMIT_WAIT = 60  # Pause after a secondary rate limit that names no Retry-After
+
+
+def print_usage():
+    print("Usage: python script_name.py <task_number> [Y/N] [Y/N] [Y/N] [--workers=N]")
     print("The first Y/N is for running unit tests (default: Y)")
     print("The second Y/N is for auto-creating issues (default: N)")
     print("The third Y/N is for using GPT analysis (default: N)")
+    print(f"--workers=N sets how many students are graded in parallel (default: {DEFAULT_WORKERS})")
+    print("--daemon compiles and runs Java tests in a persistent JVM per worker")
+    print("--precompile-tests compiles the unit tests once and reuses them for students with matching classes")
+    print("--full-clone clones the complete history instead of a shallow, src-only checkout")
+    print("--no-cache regrades every student instead of reusing results for unchanged commits")
+    print(f"--gpt-workers=N sets how many GPT requests run at the same time (default: {DEFAULT_GPT_WORKERS})")
+    print("--resume skips the students already in the results journal of an interrupted run")
+    print("--benchmark runs the task's JMH benchmarks for students whose unit tests pass")
+
+
+# Split the command line into positional Y/N arguments and --options
+args = [arg for arg in sys.argv if not arg.startswith("--")]
+options = [arg for arg in sys.argv[1:] if arg.startswith("--")]
+
+# Check for input parameters
+if len(args) < 2 or not args[1].isdigit() or int(args[1]) <= 0:
+    print_usage()
     sys.exit(1)
 
-task_number = sys.argv[1]  # The task number, e.g., "2"
+task_number = args[1]  # The task number, e.g., "2"
+
+# Determine the size of the worker pool and whether to use the grading daemon
+max_workers = DEFAULT_WORKERS
+use_daemon = False
+precompile_tests = False
+full_clone = False
+no_cache = False
+gpt_workers = DEFAULT_GPT_WORKERS
+resume = False
+run_benchmarks = False
+for option in options:
+    if option.startswith("--workers="):
+        workers_input = option.split("=", 1)[1]
+        if not workers_input.isdigit() or int(workers_input) <= 0:
+            print("Invalid parameter for --workers. Use a positive integer.")
+            sys.exit(1)
+        max_workers = int(workers_input)
+    elif option == "--daemon":
+        use_daemon = True
+    elif option == "--precompile-tests":
+        precompile_tests = True
+    elif option == "--full-clone":
+        full_clone = True
+    elif option == "--no-cache":
+        no_cache = True
+    elif option.startswith("--gpt-workers="):
+        gpt_workers_input = option.split("=", 1)[1]
+        if not gpt_workers_input.isdigit() or int(gpt_workers_input) <= 0:
+            print("Invalid parameter for --gpt-workers. Use a positive integer.")
+            sys.exit(1)
+        gpt_workers = int(gpt_workers_input)
+    elif option == "--resume":
+        resume = True
+    elif option == "--benchmark":
+        run_benchmarks = True
+    else:
+        print(f"Unknown option: {option}")
+        print_usage()
+        sys.exit(1)
 
 # Determine language and repository suffix based on the task number
 if int(task_number) < 20:
@@ -45,10 +147,14 @@ else:
     language = "go"
     repo_suffix = f"palinda-{int(task_number) - 19}"
 
+# Unit test runs of tasks with performance tests may take longer than the other steps
+test_timeout = TEST_TIMEOUT_SECONDS.get(task_number, TIMEOUT_SECONDS)
+test_jvm_flags = TEST_JVM_FLAGS.get(task_number, [])
+
 # Determine whether to run unit tests
 run_tests = True  # Default is to run tests
-if len(sys.argv) >= 3:
-    run_tests_input = sys.argv[2].strip().upper()
+if len(args) >= 3:
+    run_tests_input = args[2].strip().upper()
     if run_tests_input == "Y":
         run_tests = True
     elif run_tests_input == "N":
@@ -59,8 +165,8 @@ if len(sys.argv) >= 3:
 
 # Determine whether to auto-create issues
 auto_create_issues = False  # Default is not to create issues
-if len(sys.argv) >= 4:
-    create_issues_input = sys.argv[3].strip().upper()
+if len(args) >= 4:
+    create_issues_input = args[3].strip().upper()
     if create_issues_input == "Y":
         auto_create_issues = True
     elif create_issues_input == "N":
@@ -71,8 +177,8 @@ if len(sys.argv) >= 4:
 
 # Determine whether to use GPT analysis
 use_gpt = False  # Default is not to use GPT
-if len(sys.argv) >= 5:
-    use_gpt_input = sys.argv[4].strip().upper()
+if len(args) >= 5:
+    use_gpt_input = args[4].strip().upper()
     if use_gpt_input == "Y":
         use_gpt = True
     elif use_gpt_input == "N":
@@ -96,16 +202,29 @@ if not github_token and not openai_api_key:
     use_gpt = False
 
 # Initialize GitHub API client if token is available
+# GITHUB_API_URL points it at another server, such as stubs/github_stub.py.
+# Retries are done by the IssuePublisher so that it sees the rate limit headers.
 if github_token and auto_create_issues:
     GITHUB_ENTERPRISE_URL = "https://gits-15.sys.kth.se"
-    g = Github(base_url=GITHUB_ENTERPRISE_URL + "/api/v3", login_or_token=github_token)
+    g = Github(
+        base_url=os.getenv("GITHUB_API_URL") or GITHUB_ENTERPRISE_URL + "/api/v3",
+        login_or_token=github_token,
+        retry=None,
+    )
 else:
     g = None
 
-# Initialize OpenAI API client if API key is available
+# Initialize OpenAI API client if API key is available. OPENAI_BASE_URL points it
+# at another server, such as stubs/openai_stub.py for offline load tests.
+# Retries are done by analyze_with_gpt so that they can back off with jitter.
 if openai_api_key and use_gpt:
     OpenAI.api_key = openai_api_key
-    client = OpenAI(api_key=openai_api_key)
+    client = OpenAI(
+        api_key=openai_api_key,
+        base_url=os.getenv("OPENAI_BASE_URL") or None,
+        max_retries=0,
+        timeout=GPT_TIMEOUT_SECONDS,
+    )
 else:
     if use_gpt:
         print("OpenAI API key not found or invalid. GPT analysis will be disabled.")
@@ -145,6 +264,49 @@ if os.path.exists(base_folder):
     shutil.rmtree(base_folder)
 os.mkdir(base_folder)
 
+# How long every stage took for every student, written to grading_metrics_task-N.csv
+# and summarized at the end of the run to show where the time goes
+metrics_path = os.path.join(os.getcwd(), f"grading_metrics_task-{task_number}.csv")
+stage_timings = []  # (student, stage, seconds)
+stage_timings_lock = threading.Lock()
+current_student = threading.local()  # The student the current thread works on
+
+
+@contextmanager
+def timed(stage):
+    start = time.perf_counter()
+    try:
+        yield
+    finally:
+        seconds = time.perf_counter() - start
+        with stage_timings_lock:
+            stage_timings.append((getattr(current_student, "name", ""), stage, seconds))
+
+
+def report_stage_timings():
+    with stage_timings_lock:
+        timings = list(stage_timings)
+    with open(metrics_path, "w", newline="", encoding="utf-8") as f:
+        writer = csv.writer(f)
+        writer.writerow(["Student", "Stage", "Seconds"])
+        for student, stage, seconds in timings:
+            writer.writerow([student, stage, f"{seconds:.3f}"])
+
+    # Stages in the order they first ran, with nearest-rank percentiles
+    stages = {}
+    for student, stage, seconds in timings:
+        stages.setdefault(stage, []).append(seconds)
+    print(f"{'Stage':<16}{'Count':>7}{'p50':>9}{'p95':>9}{'Max':>9}{'Total':>10}")
+    for stage, durations in stages.items():
+        durations.sort()
+        p50 = durations[math.ceil(0.50 * len(durations)) - 1]
+        p95 = durations[math.ceil(0.95 * len(durations)) - 1]
+        print(
+            f"{stage:<16}{len(durations):>7}{p50:>9.2f}{p95:>9.2f}"
+            f"{durations[-1]:>9.2f}{sum(durations):>10.2f}"
+        )
+    print(f"Stage timings per student saved to '{os.path.basename(metrics_path)}'.")
+
 
 # Function to detect if a Java file is a JUnit test
 def is_junit_test(java_path):
@@ -160,6 +322,38 @@ def is_junit_test(java_path):
         return False
 
 
+# Function to detect if a Java file extends one of the given (test) classes
+def extends_any(java_path, class_names):
+    try:
+        with open(java_path, "r", encoding="utf-8") as f:
+            match = re.search(r"\bextends\s+(\w+)", f.read())
+    except Exception:
+        return False
+    return match is not None and match.group(1) in class_names
+
+
+# Function to clone a student repository
+def clone_student_repo(git_url, repo_path):
+    """
+    By default only the tip of the default branch is fetched (shallow, single branch),
+    and blobs are filtered so that only src/ and the files in the repository root
+    (README.md) are downloaded. Committed build artifacts and other large files
+    elsewhere in the repository are never transferred.
+    """
+    if full_clone:
+        return git.Repo.clone_from(git_url, repo_path)
+    repo = git.Repo.clone_from(
+        git_url,
+        repo_path,
+        depth=1,
+        single_branch=True,
+        filter="blob:none",
+        sparse=True,
+    )
+    repo.git.sparse_checkout("set", "src")
+    return repo
+
+
 # Function to run a command with timeout
 def run_with_timeout(command, cwd, timeout):
     process = subprocess.Popen(
@@ -180,6 +374,198 @@ def run_with_timeout(command, cwd, timeout):
         timer.cancel()
 
 
+# With several JVMs running side by side, a single GC thread per JVM avoids
+# every javac/java process spinning up one GC thread per core
+jvm_flags = ["-XX:+UseSerialGC"] if max_workers > 1 else []
+
+
+class GradingDaemon:
+    """
+    A persistent grading JVM (grader/GradingServer.java) that compiles and runs
+    JUnit in-process, so javac and JUnit are only loaded once per worker.
+    Each daemon serves one worker thread and runs in its own scratch directory,
+    so tests that create relative files cannot collide between workers.
+    A test run that leaves threads running (e.g. a test abandoned by JUnit's
+    Timeout rule) gets the daemon restarted, so they can't slow down the timed
+    tests of the students after it.
+    """
+
+    def __init__(self, index):
+        self.workdir = os.path.join(base_folder, f"daemon_{index}")
+        os.makedirs(self.workdir, exist_ok=True)
+        self.process = None
+
+    def start(self):
+        classpath = os.pathsep.join([grader_classes, junit_jar, hamcrest_jar])
+        self.process = subprocess.Popen(
+            ["java", *jvm_flags, "-cp", classpath, "grader.GradingServer"],
+            cwd=self.workdir,
+            stdin=subprocess.PIPE,
+            stdout=subprocess.PIPE,
+            stderr=subprocess.DEVNULL,
+            text=True,
+            encoding="utf-8",
+        )
+
+    def run(self, command, cwd, timeout):
+        """Same contract as run_with_timeout: returns (returncode, stdout, stderr)."""
+        if self.process is None or self.process.poll() is not None:
+            self.start()
+        process = self.process
+        timed_out = threading.Event()
+
+        def kill():
+            timed_out.set()
+            process.kill()
+
+        timer = threading.Timer(timeout, kill)
+        lines = []
+        try:
+            timer.start()
+            process.stdin.write("\t".join([cwd] + command) + "\n")
+            process.stdin.flush()
+            for _ in range(4):
+                line = process.stdout.readline()
+                if not line.endswith("\n"):
+                    break
+                lines.append(line[:-1])
+        except OSError:
+            pass
+        finally:
+            timer.cancel()
+
+        if len(lines) == 4:
+            returncode, stdout, stderr, leftover_threads = lines
+            if int(leftover_threads) > 0:
+                student = getattr(current_student, "name", "")
+                print(
+                    f"{student}: the tests left {leftover_threads} threads running, "
+                    "restarting the grading daemon"
+                )
+                self.restart()
+            return int(returncode), unescape(stdout), unescape(stderr)
+
+        # The daemon died: either the timer killed it, or the student's code
+        # took the whole JVM down (e.g. System.exit). Start over next time.
+        self.restart()
+        if timed_out.is_set():
+            return -9, "", f"Killed after {timeout} seconds"
+        # Re-run the command the old way to get the exact process semantics
+        return run_with_timeout(command, cwd=cwd, timeout=timeout)
+
+    def restart(self):
+        """Kill the JVM, threads that never end included; the next run starts a new one."""
+        self.process.kill()
+        self.process.wait()
+        self.process = None
+
+    def stop(self):
+        if self.process is not None and self.process.poll() is None:
+            self.process.stdin.close()
+            self.process.wait()
+
+
+def unescape(text):
+    """Reverse the escaping of backslashes and line breaks done by GradingServer."""
+    result = []
+    chars = iter(text)
+    for char in chars:
+        if char == "\\":
+            escaped = next(chars, "")
+            result.append({"n": "\n", "r": "\r"}.get(escaped, escaped))
+        else:
+            result.append(char)
+    return "".join(result)
+
+
+# One grading daemon per worker thread, started on first use
+grader_classes = os.path.join(base_folder, "grader_classes")
+daemon_local = threading.local()
+daemons = []
+daemons_lock = threading.Lock()
+
+
+def run_java_command(command, cwd, timeout):
+    if not use_daemon:
+        return run_with_timeout(command, cwd=cwd, timeout=timeout)
+    daemon = getattr(daemon_local, "daemon", None)
+    if daemon is None:
+        with daemons_lock:
+            daemon = GradingDaemon(len(daemons))
+            daemons.append(daemon)
+        daemon_local.daemon = daemon
+    return daemon.run(command, cwd, timeout)
+
+
+# Unit test classes compiled once and shared by every student (--precompile-tests)
+shared_tests_dir = os.path.join(base_folder, "shared_test_classes")
+# The classes of the student the shared tests were compiled against
+shared_tests_student_dir = os.path.join(base_folder, "shared_test_student_classes")
+shared_tests_lock = threading.Lock()
+shared_tests_ready = False
+
+
+def shared_tests_link(repo_path):
+    """
+    Check at bytecode level (grader/LinkCheck.java) that every class, method
+    and field the shared test classes use exists in the student's classes
+    with the same signature. The methods they call must also have the same
+    overloads as in the classes the tests were compiled against, and the
+    constants the same values, as javac resolves the former and copies the
+    latter into the tests. Otherwise the tests are recompiled for the student.
+    """
+    classpath = os.pathsep.join([grader_classes, junit_jar, hamcrest_jar])
+    link_check_command = [
+        "java",
+        *jvm_flags,
+        "-cp",
+        classpath,
+        "grader.LinkCheck",
+        shared_tests_dir,
+        repo_path,
+        shared_tests_student_dir,
+    ]
+    try:
+        returncode, stdout, stderr = run_java_command(
+            link_check_command, cwd=repo_path, timeout=TIMEOUT_SECONDS
+        )
+        return returncode == 0
+    except Exception:
+        return False
+
+
+def publish_shared_tests(test_classes_dir, repo_path):
+    """
+    The first successfully compiled set of test classes is reused for everyone
+    else, together with the student classes they were compiled against.
+    """
+    global shared_tests_ready
+
+    def student_classes_only(directory, names):
+        return [
+            name
+            for name in names
+            if name in (".git", os.path.basename(test_classes_dir))
+            or not (name.endswith(".class") or os.path.isdir(os.path.join(directory, name)))
+        ]
+
+    with shared_tests_lock:
+        if not shared_tests_ready:
+            shutil.copytree(test_classes_dir, shared_tests_dir)
+            shutil.copytree(repo_path, shared_tests_student_dir, ignore=student_classes_only)
+            shared_tests_ready = True
+
+
+# Timings the performance tests print, one per line, for the Performance column.
+# JUnit's progress dots may come first on the same line.
+def extract_performance_report(test_output):
+    return "\n".join(
+        line.split(PERFORMANCE_PREFIX, 1)[1].strip()
+        for line in test_output.splitlines()
+        if PERFORMANCE_PREFIX in line
+    )
+
+
 # Java testing function remains unchanged
 def run_java_class(
     repo_path, src_path, unit_test_files, test_class_names, unit_tests_dir
@@ -197,48 +583,83 @@ def run_java_class(
             java_files.append(file_relative_path)
 
     if not java_files:
-        return "No Java files found to compile (excluding test files)", None
+        return "No Java files found to compile (excluding test files)", None, ""
 
-    compile_command = ["javac", "-d", repo_path] + java_files
+    compile_command = (
+        ["javac"] + [f"-J{flag}" for flag in jvm_flags] + ["-d", repo_path] + java_files
+    )
     try:
-        returncode, stdout, stderr = run_with_timeout(
-            compile_command, cwd=src_path, timeout=TIMEOUT_SECONDS
-        )
+        with timed("compile"):
+            returncode, stdout, stderr = run_java_command(
+                compile_command, cwd=src_path, timeout=TIMEOUT_SECONDS
+            )
         if returncode != 0:
             unit_test_result = "Unit tests could not be run because compilation failed."
-            return f"Compilation Failed: {stderr.strip()}", unit_test_result
+            return f"Compilation Failed: {stderr.strip()}", unit_test_result, ""
     except Exception as e:
-        return f"Compilation Error: {str(e)}", None
+        return f"Compilation Error: {str(e)}", None, ""
 
     if run_tests:
         classpath = os.pathsep.join([repo_path, junit_jar, hamcrest_jar])
-        unit_test_relative_files = []
-        for unit_test_file in unit_test_files:
-            unit_test_relative_path = os.path.relpath(unit_test_file, unit_tests_dir)
-            unit_test_relative_files.append(unit_test_relative_path)
 
-        compile_test_command = (
-            ["javac", "-cp", classpath] + unit_test_relative_files + ["-d", repo_path]
-        )
-        try:
-            returncode, stdout, stderr = run_with_timeout(
-                compile_test_command, cwd=unit_tests_dir, timeout=TIMEOUT_SECONDS
+        # With --precompile-tests the tests are compiled into their own directory,
+        # and skipped entirely when the shared test classes link against this student
+        test_classes_dir = repo_path
+        if precompile_tests:
+            test_classes_dir = os.path.join(repo_path, "unit_test_classes")
+            if shared_tests_ready:
+                with timed("link_check"):
+                    links = shared_tests_link(repo_path)
+                if links:
+                    test_classes_dir = shared_tests_dir
+
+        if test_classes_dir != shared_tests_dir:
+            unit_test_relative_files = []
+            for unit_test_file in unit_test_files:
+                unit_test_relative_path = os.path.relpath(unit_test_file, unit_tests_dir)
+                unit_test_relative_files.append(unit_test_relative_path)
+
+            os.makedirs(test_classes_dir, exist_ok=True)
+            compile_test_command = (
+                ["javac"]
+                + [f"-J{flag}" for flag in jvm_flags]
+                + ["-cp", classpath, "-implicit:none"]
+                + unit_test_relative_files
+                + ["-d", test_classes_dir]
+            )
+            try:
+                with timed("test_compile"):
+                    returncode, stdout, stderr = run_java_command(
+                        compile_test_command, cwd=unit_tests_dir, timeout=TIMEOUT_SECONDS
+                    )
+                if returncode != 0:
+                    return "Success", f"Unit Test Compilation Failed: {stderr.strip()}", ""
+            except Exception as e:
+                return "Success", f"Unit Test Compilation Error: {str(e)}", ""
+            if precompile_tests:
+                publish_shared_tests(test_classes_dir, repo_path)
+
+        if test_classes_dir != repo_path:
+            classpath = os.pathsep.join(
+                [repo_path, test_classes_dir, junit_jar, hamcrest_jar]
             )
-            if returncode != 0:
-                return "Success", f"Unit Test Compilation Failed: {stderr.strip()}"
-        except Exception as e:
-            return "Success", f"Unit Test Compilation Error: {str(e)}"
 
         try:
             run_test_command = [
                 "java",
+                *jvm_flags,
+                *test_jvm_flags,
                 "-cp",
                 classpath,
                 "org.junit.runner.JUnitCore",
             ] + test_class_names
-            returncode, test_stdout, test_stderr = run_with_timeout(
-                run_test_command, cwd=repo_path, timeout=TIMEOUT_SECONDS
-            )
+            # The daemon's JVM can't take on the flags of a task, e.g. its heap limit
+            test_runner = run_with_timeout if test_jvm_flags else run_java_command
+            with test_run_lock, timed("test_run"):
+                returncode, test_stdout, test_stderr = test_runner(
+                    run_test_command, cwd=repo_path, timeout=test_timeout
+                )
+            performance_report = extract_performance_report(test_stdout)
             if returncode == 0:
                 unit_test_result = "Unit Tests Passed"
             else:
@@ -247,10 +668,16 @@ def run_java_class(
                 )
         except Exception as e:
             unit_test_result = f"Unit Tests Failed: {str(e)}"
+            performance_report = ""
 
-        return "Success", unit_test_result
+        if run_benchmarks and unit_test_result == "Unit Tests Passed":
+            performance_report = "\n".join(
+                filter(None, [performance_report, run_benchmark(repo_path)])
+            )
+
+        return "Success", unit_test_result, performance_report
     else:
-        return "Success", "Unit tests not run"
+        return "Success", "Unit tests not run", ""
 
 
 def run_go_tests(repo_path, src_path, unit_tests_dir):
@@ -265,7 +692,7 @@ def run_go_tests(repo_path, src_path, unit_tests_dir):
         f for f in os.listdir(unit_tests_dir) if f.endswith("_test.go")
     ]
     if not instructor_test_files:
-        return "No instructor test files found", None
+        return "No instructor test files found", None, ""
 
     # For each instructor test file, copy the corresponding student source file and the test file
     for test_file in instructor_test_files:
@@ -292,12 +719,14 @@ def run_go_tests(repo_path, src_path, unit_tests_dir):
         instructor_test_file_path = os.path.join(unit_tests_dir, test_file)
         shutil.copy(instructor_test_file_path, os.path.join(go_test_temp, test_file))
 
-    # Run go tests in the temporary directory.
+    # Run go tests in the temporary directory; go test compiles and runs in one step
     test_command = ["go", "test", "-v", "./..."]
     try:
-        returncode, test_stdout, test_stderr = run_with_timeout(
-            test_command, cwd=go_test_temp, timeout=TIMEOUT_SECONDS
-        )
+        with timed("test_run"):
+            returncode, test_stdout, test_stderr = run_with_timeout(
+                test_command, cwd=go_test_temp, timeout=test_timeout
+            )
+        performance_report = extract_performance_report(test_stdout)
         if returncode == 0:
             unit_test_result = "Unit Tests Passed"
         else:
@@ -306,13 +735,14 @@ def run_go_tests(repo_path, src_path, unit_tests_dir):
             )
     except Exception as e:
         unit_test_result = f"Unit Tests Failed: {str(e)}"
+        performance_report = ""
 
     try:
         shutil.rmtree(go_test_temp)
     except Exception as e:
         print(f"Warning: Could not remove temporary directory {go_test_temp}: {str(e)}")
 
-    return "Success", unit_test_result
+    return "Success", unit_test_result, performance_report
 
 
 # Modular GPT analysis function for both Java and Go
@@ -449,17 +879,31 @@ Förbättringsmöjligheter utöver vad som krävs av uppgiftsbeskrivningen ska v
 
             Ge svaret kort, max 100 ord och fokusera mer på vad studenten kan göra för att lära sig hur man löser det.
             """
-    try:
-        response = client.responses.create(
-            model="gpt-5-nano-2025-08-07",
-            input=[{"role": "user", "content": prompt}],
-            reasoning={"effort": "minimal"},
-            text={"verbosity": "low"},
-        )
-        return response.output_text
-    except Exception as e:
-        print(f"Error generating analysis with GPT: {e}")
-        return "Kunde inte generera analys på grund av ett fel med OpenAI API."
+    for attempt in range(1, GPT_MAX_ATTEMPTS + 1):
+        try:
+            response = client.responses.create(
+                model=GPT_MODEL,
+                input=[{"role": "user", "content": prompt}],
+                reasoning={"effort": "minimal"},
+                text={"verbosity": "low"},
+            )
+            return response.output_text
+        except (RateLimitError, APIConnectionError, InternalServerError) as e:
+            if attempt == GPT_MAX_ATTEMPTS:
+                print(f"Error generating analysis with GPT after {attempt} attempts: {e}")
+                return GPT_ERROR_MESSAGE
+            # Exponential backoff with full jitter so that the workers do not retry
+            # in lockstep, but never sooner than the server's Retry-After
+            delay = random.uniform(0, GPT_BACKOFF_SECONDS * 2 ** (attempt - 1))
+            if isinstance(e, APIStatusError):
+                try:
+                    delay = max(delay, float(e.response.headers.get("retry-after", 0)))
+                except ValueError:
+                    pass
+            time.sleep(delay)
+        except Exception as e:
+            print(f"Error generating analysis with GPT: {e}")
+            return GPT_ERROR_MESSAGE
 
 
 # Function to extract assignment instructions from README.md
@@ -555,20 +999,73 @@ def collect_student_code(src_path, language):
     return code_contents
 
 
+# Function to hash the student's non-test code as GPT sees it (comments stripped)
+def hash_student_code(src_path, language):
+    digest = hashlib.sha256()
+    for root, dirs, files in os.walk(src_path):
+        dirs.sort()
+        for file in sorted(files):
+            file_full_path = os.path.join(root, file)
+            if language == "java":
+                if not file.endswith(".java") or is_junit_test(file_full_path):
+                    continue
+            elif language == "go":
+                if not file.endswith(".go") or file.endswith("_test.go"):
+                    continue
+            with open(file_full_path, "r", encoding="utf-8", errors="replace") as f:
+                stripped_code, comments_found = strip_comments(f.read(), language)
+            # Blank lines and trailing whitespace left behind by removed comments don't count
+            normalized_code = "\n".join(
+                line.rstrip() for line in stripped_code.split("\n") if line.strip()
+            )
+            digest.update(os.path.relpath(file_full_path, src_path).encode("utf-8") + b"\0")
+            digest.update(normalized_code.encode("utf-8") + b"\0")
+    return digest.hexdigest()
+
+
+# Identical submissions are compiled, tested and analyzed only once: the first
+# student with a given code hash does the work, the others wait for its result
+submission_futures = {}  # (stage, code hash or GPT cache key) -> Future
+submission_lock = threading.Lock()
+
+
+def once_per_submission(stage, key, work):
+    with submission_lock:
+        future = submission_futures.get((stage, key))
+        is_first = future is None
+        if is_first:
+            future = Future()
+            submission_futures[(stage, key)] = future
+    if is_first:
+        try:
+            future.set_result(work())
+        except Exception as e:
+            future.set_exception(e)
+    return future.result()
+
+
 # Collect unit test files from 'UnitTests/Task-{task_number}' directory
 unit_tests_dir = os.path.join(os.getcwd(), "UnitTests", f"Task-{task_number}")
 unit_test_files = []
 test_class_names = []
 if os.path.exists(unit_tests_dir):
     if language == "java":
-        for file in os.listdir(unit_tests_dir):
-            if not file.endswith(".java"):
-                continue
+        java_files = [file for file in os.listdir(unit_tests_dir) if file.endswith(".java")]
+        # Helpers next to the tests, such as input generators, are compiled but not run.
+        # A test either uses JUnit itself or extends a class that does.
+        junit_classes = {
+            os.path.splitext(file)[0]
+            for file in java_files
+            if is_junit_test(os.path.join(unit_tests_dir, file))
+        }
+        for file in java_files:
             unit_test_file = os.path.join(unit_tests_dir, file)
             unit_test_files.append(unit_test_file)
             class_name = os.path.splitext(file)[0]
             if class_name == "TextFileTest":   # <-- hard skip the abstract base
                 continue
+            if class_name not in junit_classes and not extends_any(unit_test_file, junit_classes):
+                continue
             test_class_names.append(class_name)
 else:
     if run_tests:
@@ -576,31 +1073,667 @@ else:
         print("Unit tests are enabled, but no unit tests were found. Exiting.")
         sys.exit(1)
 
+# Performance and deep tests time the submission against a reference measured at
+# another moment, so other workers competing for the cores can fail a correct
+# submission. The test runs of tasks with such tests take turns, like the benchmarks.
+timed_test_classes = [
+    name for name in test_class_names if name.endswith(("PerformanceTest", "DeepTest"))
+]
+if run_tests and timed_test_classes and max_workers > 1:
+    print(
+        f"Task {task_number} has timed tests ({', '.join(sorted(timed_test_classes))}), "
+        f"so its test runs take turns across the {max_workers} workers."
+    )
+    test_run_lock = threading.Lock()
+else:
+    test_run_lock = nullcontext()
+
+# JMH benchmarks live in the benchmark subdirectory of the unit tests, which the
+# collection above does not look into. They need the JMH jars next to the script.
+benchmark_dir = os.path.join(unit_tests_dir, "benchmark")
+jmh_jars = [os.path.join(os.getcwd(), jar) for jar in JMH_JARS]
+if run_benchmarks:
+    missing_jars = [os.path.basename(jar) for jar in jmh_jars if not os.path.exists(jar)]
+    if language != "java" or not os.path.isdir(benchmark_dir):
+        print(f"No JMH benchmarks found for Task {task_number}. --benchmark is ignored.")
+        run_benchmarks = False
+    elif missing_jars:
+        print(f"JMH jars not found: {', '.join(missing_jars)}. --benchmark is ignored.")
+        run_benchmarks = False
+    elif not run_tests:
+        print("Benchmarks only run for students whose unit tests pass. --benchmark is ignored.")
+        run_benchmarks = False
+# One benchmark at a time, so that two of them don't compete for the same cores
+benchmark_lock = threading.Lock()
+
+
+def run_benchmark(repo_path):
+    """Benchmarks the compiled submission in repo_path and returns one line per result."""
+    classes_dir = os.path.join(repo_path, "benchmark_classes")
+    os.makedirs(classes_dir, exist_ok=True)
+    classpath = os.pathsep.join([repo_path] + jmh_jars)
+    # The benchmarks are in the package benchmark, so they compile from the directory above
+    sources = sorted(
+        os.path.join("benchmark", file)
+        for file in os.listdir(benchmark_dir)
+        if file.endswith(".java")
+    )
+    compile_command = [
+        "javac",
+        "-cp",
+        classpath,
+        "-processor",
+        "org.openjdk.jmh.generators.BenchmarkProcessor",
+        "-d",
+        classes_dir,
+    ] + sources
+    try:
+        returncode, stdout, stderr = run_with_timeout(
+            compile_command, cwd=unit_tests_dir, timeout=TIMEOUT_SECONDS
+        )
+        if returncode != 0:
+            return f"Benchmark compilation failed: {stderr.strip()}"
+
+        # JMH's -p applies to every benchmark of a run, so each benchmark gets a run of its own
+        params = benchmark_params()
+        results = []
+        failures = []
+        deadline = time.monotonic() + BENCHMARK_TIMEOUT_SECONDS
+        with benchmark_lock, timed("benchmark"):
+            for source in sources:
+                benchmark = os.path.basename(source)[: -len(".java")]
+                if time.monotonic() >= deadline:
+                    failures.append(f"Benchmark {benchmark} failed: timed out")
+                    continue
+                results_path = os.path.join(repo_path, f"benchmark_results_{benchmark}.json")
+                if os.path.exists(results_path):
+                    os.remove(results_path)
+                run_command = [
+                    "java",
+                    "-cp",
+                    os.pathsep.join([classes_dir, classpath]),
+                    "org.openjdk.jmh.Main",
+                    f"^benchmark\\.{benchmark}\\.",
+                    *BENCHMARK_OPTIONS,
+                    *[arg for param in params.get(benchmark, []) for arg in ("-p", param)],
+                    "-rf",
+                    "json",
+                    "-rff",
+                    results_path,
+                ]
+                returncode, stdout, stderr = run_with_timeout(
+                    run_command, cwd=repo_path, timeout=max(1, deadline - time.monotonic())
+                )
+                # A run that crashed or was killed leaves no results file, or a broken one
+                benchmark_results = []
+                try:
+                    with open(results_path, "r", encoding="utf-8") as f:
+                        benchmark_results = json.load(f)
+                except (OSError, ValueError):
+                    pass
+                results += benchmark_results
+                if time.monotonic() >= deadline:
+                    failures.append(f"Benchmark {benchmark} failed: timed out")
+                elif returncode != 0 or not benchmark_results:
+                    failures.append(
+                        f"Benchmark {benchmark} failed:\n{stdout.strip()[-2000:]}\n{stderr.strip()[-2000:]}"
+                    )
+    except OSError as e:
+        return f"Benchmark failed: {str(e)}"
+    return "\n".join(filter(None, [format_benchmark_results(results)] + failures))
+
 
-# Iterate over each student and generate the GitHub URL dynamically
-results = []
+def benchmark_params():
+    """
+    The JMH parameters of the grading run per benchmark class, read from the
+    task's benchmark/grading_params.txt. Each line names a benchmark and its
+    parameters, e.g. "IntSorterBenchmark size=100000 distribution=random,sorted".
+    Benchmarks without a line run with all the values of their @Param fields.
+    """
+    params = {}
+    path = os.path.join(benchmark_dir, BENCHMARK_PARAMS_FILE)
+    if os.path.exists(path):
+        with open(path, "r", encoding="utf-8") as f:
+            for line in f:
+                fields = line.split("#", 1)[0].split()
+                if fields:
+                    params[fields[0]] = fields[1:]
+    return params
+
+
+# A line per JMH result in the style of the performance tests' lines, with the
+# score relative to the baselines on the same input. Flagged results end in SLOWER.
+def format_benchmark_results(results):
+    scores = {}
+    for result in results:
+        # e.g. benchmark.IntSorterBenchmark.sort, kept as IntSorterBenchmark.sort
+        benchmark = ".".join(result["benchmark"].split(".")[-2:])
+        params = tuple(sorted(result.get("params", {}).items()))
+        metric = result["primaryMetric"]
+        scores[benchmark, params] = (metric["score"], metric["scoreUnit"])
+
+    lines = []
+    for (benchmark, params), (score, unit) in scores.items():
+        named_params = dict(params)
+        label = named_params.pop("implementation", benchmark)
+        described_params = ", ".join(f"{key}={value}" for key, value in named_params.items())
+        line = f"JMH {label}, {described_params}: {score:.1f} {unit}"
+        for param, (baseline_value, flag_slower) in BENCHMARK_BASELINES.items():
+            if dict(params).get(param, baseline_value) == baseline_value:
+                continue
+            baseline_params = tuple(sorted({**dict(params), param: baseline_value}.items()))
+            baseline = scores.get((benchmark, baseline_params))
+            if baseline is None:
+                continue
+            line += f" ({score / baseline[0]:.2f} times {param}={baseline_value})"
+            if flag_slower and score < BENCHMARK_SLOWER_RATIO * baseline[0]:
+                line += " SLOWER"
+        lines.append(line)
+    return "\n".join(lines)
+
+
+# Function to hash every file in a directory (names and contents)
+def hash_directory(directory):
+    digest = hashlib.sha256()
+    if os.path.exists(directory):
+        for root, dirs, files in os.walk(directory):
+            dirs.sort()
+            for file in sorted(files):
+                file_full_path = os.path.join(root, file)
+                digest.update(os.path.relpath(file_full_path, directory).encode("utf-8"))
+                with open(file_full_path, "rb") as f:
+                    digest.update(f.read())
+    return digest.hexdigest()
+
+
+# Results of earlier runs, one JSON file per student, keyed by the submission's
+# HEAD commit and a hash of the unit tests so that only changed repos are regraded
+unit_tests_hash = hash_directory(unit_tests_dir)
+cache_dir = os.path.join(os.getcwd(), "grading_cache", f"Task-{task_number}")
+
+
+def remote_head_sha(git_url):
+    """The commit the remote HEAD points to, looked up without cloning."""
+    try:
+        output = git.cmd.Git().ls_remote(git_url, "HEAD")
+        return output.split()[0] if output else None
+    except Exception:
+        return None
+
+
+def find_cached_result(student_name, git_url):
+    if no_cache:
+        return None
+    try:
+        cache_path = os.path.join(cache_dir, f"{student_name.strip()}.json")
+        with open(cache_path, "r", encoding="utf-8") as f:
+            entry = json.load(f)
+    except (OSError, ValueError):
+        return None
+    if (
+        entry.get("unit_tests_hash") != unit_tests_hash
+        or entry.get("run_tests") != run_tests
+        or entry.get("use_gpt") != use_gpt
+        or entry.get("run_benchmarks", False) != run_benchmarks
+        or entry.get("non_participating")
+        != (student_name.strip() in non_participating_students)
+    ):
+        return None
+    # A graded submission that has since become older than FAIL_TIMER must be re-checked
+    latest_commit_date = datetime.fromtimestamp(entry["latest_commit_date"])
+    if entry["compilation_result"] != "No recent commits" and (
+        latest_commit_date < datetime.now() - timedelta(days=FAIL_TIMER)
+    ):
+        return None
+    # Checked last since it is the only lookup that goes over the network
+    if entry.get("head_sha") != remote_head_sha(git_url):
+        return None
+    return entry
+
+
+def save_cached_result(student_name, entry):
+    os.makedirs(cache_dir, exist_ok=True)
+    cache_path = os.path.join(cache_dir, f"{student_name.strip()}.json")
+    with open(cache_path + ".tmp", "w", encoding="utf-8") as f:
+        json.dump(entry, f, ensure_ascii=False, indent=2)
+    os.replace(cache_path + ".tmp", cache_path)
+
+
+# GPT analyses of earlier runs, one JSON file per distinct prompt input, so that an
+# unchanged submission is never sent to the API twice
+gpt_cache_dir = os.path.join(os.getcwd(), "gpt_cache")
+
+
+def gpt_cache_key(
+    code_hash, compilation_result, unit_test_result, analysis_type, assignment_instructions
+):
+    # JUnit's run time and the student_repos/repo_{i} paths in the results change
+    # from run to run without saying anything about the submission
+    def stable(text):
+        text = re.sub(re.escape(base_folder) + r"[\\/]repo_\d+[\\/]?", "", text or "")
+        return "\n".join(
+            line for line in text.splitlines() if not line.startswith("Time: ")
+        )
+
+    key = json.dumps(
+        [
+            GPT_PROMPT_VERSION,
+            GPT_MODEL,
+            language,
+            code_hash,
+            stable(compilation_result),
+            stable(unit_test_result),
+            analysis_type,
+            assignment_instructions or "",
+        ]
+    )
+    return hashlib.sha256(key.encode("utf-8")).hexdigest()
+
+
+def cached_gpt_analysis(
+    code_hash,
+    code_contents,
+    compilation_result,
+    unit_test_result,
+    analysis_type,
+    assignment_instructions,
+):
+    cache_path = os.path.join(
+        gpt_cache_dir,
+        gpt_cache_key(
+            code_hash,
+            compilation_result,
+            unit_test_result,
+            analysis_type,
+            assignment_instructions,
+        )
+        + ".json",
+    )
+    if not no_cache:
+        try:
+            with open(cache_path, "r", encoding="utf-8") as f:
+                return json.load(f)["analysis"]
+        except (OSError, ValueError, KeyError):
+            pass
+    with timed("gpt"):
+        gpt_analysis = analyze_with_gpt(
+            code_contents,
+            compilation_result,
+            unit_test_result,
+            analysis_type,
+            language,
+            assignment_instructions,
+        )
+    # Failed requests are not cached so that the next run tries again
+    if gpt_analysis != GPT_ERROR_MESSAGE:
+        try:
+            os.makedirs(gpt_cache_dir, exist_ok=True)
+            with open(cache_path + ".tmp", "w", encoding="utf-8") as f:
+                json.dump({"analysis": gpt_analysis}, f, ensure_ascii=False, indent=2)
+            os.replace(cache_path + ".tmp", cache_path)
+        except OSError as e:
+            print(f"Could not cache GPT analysis: {e}")
+    return gpt_analysis
+
+
+# Compile the grading daemon and link checker once; fall back to the plain
+# per-student subprocesses if that fails
+if (use_daemon or precompile_tests) and language == "java":
+    os.makedirs(grader_classes, exist_ok=True)
+    grader_sources = [
+        os.path.join(os.getcwd(), "grader", "GradingServer.java"),
+        os.path.join(os.getcwd(), "grader", "LinkCheck.java"),
+    ]
+    returncode, stdout, stderr = run_with_timeout(
+        ["javac", "-cp", junit_jar, "-d", grader_classes] + grader_sources,
+        cwd=os.getcwd(),
+        timeout=TIMEOUT_SECONDS,
+    )
+    if returncode != 0:
+        print(f"Could not compile the grader classes, using subprocesses: {stderr.strip()}")
+        use_daemon = False
+        precompile_tests = False
+else:
+    use_daemon = False
+    precompile_tests = False
+
+
+# Seconds GitHub's rate limit headers ask us to wait, or None if they don't
+def rate_limit_delay(headers):
+    headers = {name.lower(): value for name, value in (headers or {}).items()}
+    try:
+        if "retry-after" in headers:
+            return float(headers["retry-after"])
+        if headers.get("x-ratelimit-remaining") == "0" and "x-ratelimit-reset" in headers:
+            return max(0.0, float(headers["x-ratelimit-reset"]) - time.time()) + 1
+    except ValueError:
+        pass
+    return None
+
+
+class IssuePublisher:
+    """
+    Creates the result issues on one background thread, so grading never waits
+    for GitHub. Issues are sent one at a time, ISSUE_WRITE_INTERVAL apart, and
+    the publisher pauses for as long as the rate limit headers say.
 
-for i, student_name in enumerate(student_names):
+    Every queued issue is appended to pending_issues.jsonl before it is sent,
+    and a "done" line follows once GitHub has it. Issues still pending when a
+    run ends (or crashes) are sent first by the next run with issues enabled.
+    """
+
+    def __init__(self, path):
+        self.path = path
+        self.queue = queue.Queue()
+        self.lock = threading.Lock()
+        self.pending = self.load(path)  # id -> issue
+        self.published = 0
+        self.next_write = 0.0
+        # Start the log over with only what is still pending
+        with open(path + ".tmp", "w", encoding="utf-8") as f:
+            for issue in self.pending.values():
+                f.write(json.dumps(issue, ensure_ascii=False) + "\n")
+        os.replace(path + ".tmp", path)
+        self.log = open(path, "a", encoding="utf-8")
+        if self.pending:
+            print(f"Publishing {len(self.pending)} issues left over from an earlier run")
+        for issue in self.pending.values():
+            self.queue.put(issue)
+        self.thread = threading.Thread(target=self.run, daemon=True)
+        self.thread.start()
+
+    @staticmethod
+    def load(path):
+        pending = {}
+        if os.path.exists(path):
+            with open(path, "r", encoding="utf-8") as f:
+                for line in f:
+                    try:
+                        record = json.loads(line)
+                    except ValueError:
+                        continue  # The last line of a run that was killed mid-write
+                    if record.get("done"):
+                        pending.pop(record["id"], None)
+                    else:
+                        pending[record["id"]] = record
+        return pending
+
+    def write_log(self, record):
+        with self.lock:
+            self.log.write(json.dumps(record, ensure_ascii=False) + "\n")
+            self.log.flush()
+            os.fsync(self.log.fileno())
+
+    def submit(self, student_name, repo_name, issue_title, issue_body):
+        issue_id = hashlib.sha256(
+            json.dumps([repo_name, issue_title, issue_body]).encode("utf-8")
+        ).hexdigest()
+        issue = {
+            "id": issue_id,
+            "student": student_name.strip(),
+            "repo": repo_name,
+            "title": issue_title,
+            "body": issue_body,
+        }
+        with self.lock:
+            if issue_id in self.pending:
+                return
+            self.pending[issue_id] = issue
+        self.write_log(issue)
+        self.queue.put(issue)
+
+    def finish(self, issue, error=None):
+        record = {"id": issue["id"], "done": True}
+        if error is not None:
+            record["error"] = error
+        self.write_log(record)
+        with self.lock:
+            self.pending.pop(issue["id"], None)
+            if error is None:
+                self.published += 1
+
+    def run(self):
+        while True:
+            issue = self.queue.get()
+            if issue is None:
+                return
+            self.publish(issue)
+
+    def publish(self, issue):
+        current_student.name = issue["student"]
+        attempt = 0
+        while True:
+            time.sleep(max(0.0, self.next_write - time.monotonic()))
+            self.next_write = time.monotonic() + ISSUE_WRITE_INTERVAL
+            try:
+                with timed("issue"):
+                    repo_obj = g.get_repo(issue["repo"], lazy=True)
+                    created = repo_obj.create_issue(title=issue["title"], body=issue["body"])
+                self.finish(issue)
+                # Stop before the primary rate limit runs out rather than after
+                delay = rate_limit_delay(getattr(created, "raw_headers", None))
+                if delay:
+                    print(f"GitHub rate limit used up, pausing issues for {delay:.0f} seconds")
+                    self.next_write = time.monotonic() + delay
+                return
+            except GithubException as e:
+                rate_limited = (
+                    isinstance(e, RateLimitExceededException)
+                    or e.status == 429
+                    or (e.status == 403 and "rate limit" in str(e.data).lower())
+                )
+                if rate_limited:
+                    delay = rate_limit_delay(e.headers) or ISSUE_RATE_LIMIT_WAIT
+                    print(f"GitHub rate limit reached, pausing issues for {delay:.0f} seconds")
+                    self.next_write = time.monotonic() + delay
+                    continue
+                if e.status is not None and 400 <= e.status < 500:
+                    # Missing repository, issues disabled and the like: retrying won't help
+                    print(f"Error creating issue for {issue['student']}: {e}")
+                    self.finish(issue, error=str(e))
+                    return
+                error = e
+            except Exception as e:
+                error = e
+            attempt += 1
+            if attempt >= ISSUE_MAX_ATTEMPTS:
+                print(
+                    f"Error creating issue for {issue['student']} after {attempt} attempts, "
+                    f"it stays in {os.path.basename(self.path)} for the next run: {error}"
+                )
+                return
+            self.next_write = time.monotonic() + random.uniform(
+                0, ISSUE_BACKOFF_SECONDS * 2 ** (attempt - 1)
+            )
+
+    def close(self):
+        """Waits until every queued issue has been sent or given up on."""
+        with self.lock:
+            waiting = len(self.pending)
+        if waiting:
+            print(f"Waiting for {waiting} issues to be published...")
+        self.queue.put(None)
+        self.thread.join()
+        self.log.close()
+        with self.lock:
+            left = len(self.pending)
+        if left:
+            print(f"{left} issues could not be published, they are kept in '{os.path.basename(self.path)}'.")
+        else:
+            os.remove(self.path)
+        print(f"Published {self.published} issues.")
+
+
+pending_issues_path = os.path.join(os.getcwd(), "pending_issues.jsonl")
+if g is not None:
+    issue_publisher = IssuePublisher(pending_issues_path)
+else:
+    issue_publisher = None
+    if os.path.exists(pending_issues_path):
+        print(
+            f"Note: '{os.path.basename(pending_issues_path)}' holds issues from an earlier run, "
+            "enable issue creation to publish them."
+        )
+
+
+# Function to queue the result issue for the student's repository
+def create_student_issue(student_name, issue_title, issue_body):
+    """Returns True if the issue was queued; the publisher creates it in the background."""
+    if not (auto_create_issues and issue_publisher is not None):
+        return False
+    repo_suffix_local = (
+        "quicksort"
+        if (language == "java" and task_number == "19")
+        else (f"task-{task_number}" if language == "java" else repo_suffix)
+    )
+    repo_name = f"inda-25/{student_name.strip()}-{repo_suffix_local}"
+    issue_publisher.submit(student_name, repo_name, issue_title, issue_body)
+    return True
+
+
+# Every student's row is appended to the journal as soon as it is known, so an
+# interrupted run loses nothing and can be continued with --resume
+result_columns = [
+    "Web URL",
+    "Compilation Result",
+    "Unit Test Result",
+    "Issue Status",
+    "GPT Analysis",
+    "Performance",
+]
+journal_path = os.path.join(os.getcwd(), f"grading_journal_task-{task_number}.jsonl")
+journal_lock = threading.Lock()
+
+
+def read_journal():
+    """The latest journal row of every student, by student name."""
+    rows = {}
+    if os.path.exists(journal_path):
+        with open(journal_path, "r", encoding="utf-8") as f:
+            for line in f:
+                try:
+                    row = json.loads(line)
+                except ValueError:
+                    continue  # The last line of a run that was killed mid-write
+                rows[row["Student"]] = row
+    return rows
+
+
+def journal_result(student_name, web_url, entry):
+    row = {
+        "Student": student_name.strip(),
+        "Web URL": web_url,
+        "Compilation Result": entry["compilation_result"],
+        "Unit Test Result": entry["unit_test_result"],
+        "Issue Status": entry["issue_status"],
+        "GPT Analysis": entry["gpt_analysis"],
+        "Performance": entry.get("performance_report", ""),
+        "Code Hash": entry.get("code_hash"),
+    }
+    line = json.dumps(row, ensure_ascii=False) + "\n"
+    with journal_lock:
+        journal.write(line)
+        journal.flush()
+        os.fsync(journal.fileno())
+
+
+if resume:
+    graded_students = read_journal()
+    # Start on a fresh line if the previous run died in the middle of a row
+    if os.path.exists(journal_path) and os.path.getsize(journal_path) > 0:
+        with open(journal_path, "rb") as f:
+            f.seek(-1, os.SEEK_END)
+            needs_newline = f.read(1) != b"\n"
+        if needs_newline:
+            with open(journal_path, "a", encoding="utf-8") as f:
+                f.write("\n")
+    journal = open(journal_path, "a", encoding="utf-8")
+    print(f"Resuming: {len(graded_students)} students already graded")
+else:
+    graded_students = {}
+    journal = open(journal_path, "w", encoding="utf-8")
+
+
+# A finished future, for the students that need no GPT analysis
+def completed(result):
+    future = Future()
+    future.set_result(result)
+    return future
+
+
+# Second stage of grading a student: the GPT analysis (run on the GPT pool so that
+# it never holds up the clones and tests), the issue and the cache entry
+def finish_student(student_name, web_url, entry, gpt_request):
+    current_student.name = student_name.strip()
+    if gpt_request is not None:
+        # Identical code gets the same analysis only for the same prompt, which also
+        # depends on the results, the analysis type and the student's instructions
+        gpt_key = gpt_cache_key(
+            entry["code_hash"],
+            gpt_request["compilation_result"],
+            gpt_request["unit_test_result"],
+            gpt_request["analysis_type"],
+            gpt_request["assignment_instructions"],
+        )
+        entry["gpt_analysis"] = once_per_submission(
+            "gpt",
+            gpt_key,
+            lambda: cached_gpt_analysis(entry["code_hash"], **gpt_request),
+        )
+        entry["issue_body"] = f"GPT Analysis: {entry['gpt_analysis']}"
+    entry["issue_created"] = create_student_issue(
+        student_name, entry["issue_title"], entry["issue_body"]
+    )
+    # Like failed GPT requests, results that carry one are graded again next run
+    if entry.get("head_sha") is not None and entry["gpt_analysis"] != GPT_ERROR_MESSAGE:
+        save_cached_result(student_name, entry)
+    journal_result(student_name, web_url, entry)
+    print(
+        f"Graded repository for student: {student_name} and results are: {entry['issue_status']}"
+    )
+
+
+# Grade a single student; each worker gets its own repo_{i} directory.
+# Returns a Future that is done once the student's row is in the journal.
+def grade_student(i, student_name):
     repo_name_local = f"repo_{i}"
     git_url = f"{base_url}{student_name.strip()}-{repo_suffix}.git"
     web_url = f"https://gits-15.sys.kth.se/inda-24/{student_name.strip()}-{repo_suffix}"
     repo_path = os.path.join(base_folder, repo_name_local)
     issue_status = "not created"
     gpt_analysis = "No GPT analysis"
+    gpt_request = None
+    code_hash = None
+    performance_report = ""
+    current_student.name = student_name.strip()
+
+    # Reuse the previous outcome if neither the submission nor the tests changed
+    with timed("cache_lookup"):
+        cached = find_cached_result(student_name, git_url)
+    if cached is not None:
+        if not cached["issue_created"] and create_student_issue(
+            student_name, cached["issue_title"], cached["issue_body"]
+        ):
+            cached["issue_created"] = True
+            save_cached_result(student_name, cached)
+        journal_result(student_name, web_url, cached)
+        print(
+            f"Reused previous results for student: {student_name} and results are: {cached['issue_status']}"
+        )
+        return completed(None)
 
     try:
         # Clone the repository
-        git.Repo.clone_from(git_url, repo_path)
+        with timed("clone"):
+            repo = clone_student_repo(git_url, repo_path)
 
-        # Check the latest commit date across all branches
-        repo = git.Repo(repo_path)
+        # Check the latest commit date across all branches, reading only the
+        # commit each branch ref points to rather than walking the history
         latest_commit_date = None
-        for branch in repo.branches:
-            commits = list(repo.iter_commits(branch))
-            if commits:
-                branch_latest_commit = commits[0]
+        with timed("activity_check"):
+            for branch in repo.branches:
                 branch_latest_commit_date = datetime.fromtimestamp(
-                    branch_latest_commit.committed_date
+                    branch.commit.committed_date
                 )
                 if (latest_commit_date is None) or (
                     branch_latest_commit_date > latest_commit_date
@@ -638,17 +1771,32 @@ for i, student_name in enumerate(student_names):
                     "No src directory found. Please check your repository structure."
                 )
             else:
+                code_hash = hash_student_code(src_path, language)
                 if language == "java":
-                    compilation_result, unit_test_result = run_java_class(
-                        repo_path,
-                        src_path,
-                        unit_test_files,
-                        test_class_names,
-                        unit_tests_dir,
+                    (
+                        compilation_result,
+                        unit_test_result,
+                        performance_report,
+                    ) = once_per_submission(
+                        "tests",
+                        code_hash,
+                        lambda: run_java_class(
+                            repo_path,
+                            src_path,
+                            unit_test_files,
+                            test_class_names,
+                            unit_tests_dir,
+                        ),
                     )
                 elif language == "go":
-                    compilation_result, unit_test_result = run_go_tests(
-                        repo_path, src_path, unit_tests_dir
+                    (
+                        compilation_result,
+                        unit_test_result,
+                        performance_report,
+                    ) = once_per_submission(
+                        "tests",
+                        code_hash,
+                        lambda: run_go_tests(repo_path, src_path, unit_tests_dir),
                     )
                 if use_gpt:
                     # Check if student is in non-participating list
@@ -680,14 +1828,13 @@ for i, student_name in enumerate(student_names):
                             and "Failed" in unit_test_result
                             else "compile_failure"
                         )
-                        gpt_analysis = analyze_with_gpt(
-                            stripped_code,
-                            compilation_result,
-                            unit_test_result,
-                            analysis_type,
-                            language,
-                            assignment_instructions,
-                        )
+                        gpt_request = {
+                            "code_contents": stripped_code,
+                            "compilation_result": compilation_result,
+                            "unit_test_result": unit_test_result,
+                            "analysis_type": analysis_type,
+                            "assignment_instructions": assignment_instructions,
+                        }
                 if compilation_result == "Success" and (
                     unit_test_result == "Unit Tests Passed"
                     or unit_test_result == "Unit Tests Passed"
@@ -702,65 +1849,109 @@ for i, student_name in enumerate(student_names):
                     if student_name.strip() in non_participating_students:
                         issue_body = gpt_analysis  # Already contains "Compilation result: ... Unit test result: ..."
                     else:
-                        issue_body = f"GPT Analysis: {gpt_analysis}"
+                        issue_body = None  # Written by finish_student once GPT has answered
                 else:
                     issue_body = f"Compilation result: {compilation_result}\nUnit test result: {unit_test_result}"
-        if auto_create_issues and g is not None:
-            try:
-                repo_suffix_local = (
-                    "quicksort"
-                    if (language == "java" and task_number == "19")
-                    else (f"task-{task_number}" if language == "java" else repo_suffix)
-                )
-                repo_name = f"inda-25/{student_name.strip()}-{repo_suffix_local}"
-                repo_obj = g.get_repo(repo_name)
-                repo_obj.create_issue(title=issue_title, body=issue_body)
-            except Exception as e:
-                print(f"Error creating issue for {student_name.strip()}: {e}")
-        results.append(
-            (web_url, compilation_result, unit_test_result, issue_status, gpt_analysis)
-        )
-        print(
-            f"Graded repository for student: {student_name} and results are: {issue_status}"
-        )
+        entry = {
+            "head_sha": repo.head.commit.hexsha if latest_commit_date is not None else None,
+            "unit_tests_hash": unit_tests_hash,
+            "run_tests": run_tests,
+            "use_gpt": use_gpt,
+            "run_benchmarks": run_benchmarks,
+            "non_participating": student_name.strip() in non_participating_students,
+            "latest_commit_date": latest_commit_date.timestamp()
+            if latest_commit_date is not None
+            else None,
+            "code_hash": code_hash,
+            "compilation_result": compilation_result,
+            "unit_test_result": unit_test_result,
+            "performance_report": performance_report,
+            "issue_status": issue_status,
+            "gpt_analysis": gpt_analysis,
+            "issue_title": issue_title,
+            "issue_body": issue_body,
+        }
+        if gpt_request is not None:
+            return gpt_executor.submit(
+                finish_student, student_name, web_url, entry, gpt_request
+            )
+        finish_student(student_name, web_url, entry, None)
+        return completed(None)
     except Exception as e:
         print(f"Error processing {student_name.strip()}: {str(e)}")
-        compilation_result = f"Error: {str(e)}"
-        unit_test_result = "Unit test not run"
-        issue_status = "Fail"
-        issue_title = "Fail"
-        issue_body = "Contact me for explanation."
-        if auto_create_issues and g is not None:
-            try:
-                repo_suffix_local = (
-                    "quicksort"
-                    if (language == "java" and task_number == "19")
-                    else (f"task-{task_number}" if language == "java" else repo_suffix)
-                )
-                repo_name = f"inda-25/{student_name.strip()}-{repo_suffix_local}"
-                repo_obj = g.get_repo(repo_name)
-                repo_obj.create_issue(title=issue_title, body=issue_body)
-            except Exception as e:
-                print(f"Error creating issue for {student_name.strip()}: {e}")
-        results.append(
-            (web_url, compilation_result, unit_test_result, issue_status, gpt_analysis)
+        entry = {
+            "compilation_result": f"Error: {str(e)}",
+            "unit_test_result": "Unit test not run",
+            "issue_status": "Fail",
+            "gpt_analysis": gpt_analysis,
+            "issue_title": "Fail",
+            "issue_body": "Contact me for explanation.",
+        }
+        finish_student(student_name, web_url, entry, None)
+        return completed(None)
+
+
+# Grade the students concurrently; GPT analyses queue up on their own, smaller pool
+# while the workers move on. Students already in the journal are skipped on --resume.
+to_grade = [
+    (i, name)
+    for i, name in enumerate(student_names)
+    if name.strip() not in graded_students
+]
+with ThreadPoolExecutor(max_workers=gpt_workers) as gpt_executor:
+    with ThreadPoolExecutor(max_workers=max_workers) as executor:
+        pending_students = list(
+            executor.map(lambda student: grade_student(*student), to_grade)
         )
-        print(
-            f"Graded repository for student: {student_name} and results are: {issue_status}"
-        )
-
-# Save results back to a new Excel file with both issue and GPT columns
+    for daemon in daemons:
+        daemon.stop()
+    for future in pending_students:
+        future.result()
+journal.close()
+if issue_publisher is not None:
+    issue_publisher.close()
+report_stage_timings()
+
+# Render the Excel file from the journal, in the order of the student list
+journal_rows = read_journal()
+student_order = {}
+for i, name in enumerate(student_names):
+    student_order.setdefault(name.strip(), i)
 result_df = pd.DataFrame(
-    results,
-    columns=[
-        "Web URL",
-        "Compilation Result",
-        "Unit Test Result",
-        "Issue Status",
-        "GPT Analysis",
+    [
+        [journal_rows[name.strip()].get(column, "") for column in result_columns]
+        for name in student_names
+        if name.strip() in journal_rows
     ],
+    columns=result_columns,
 )
-result_df.to_excel("grading_results.xlsx", index=False)
+
+# Students whose code is identical after stripping comments, largest clusters first
+submission_students = {}
+for name, row in journal_rows.items():
+    if row.get("Code Hash") and name in student_order:
+        submission_students.setdefault(row["Code Hash"], []).append(name)
+duplicate_clusters = sorted(
+    (
+        sorted(students, key=student_order.get)
+        for students in submission_students.values()
+        if len(students) > 1
+    ),
+    key=len,
+    reverse=True,
+)
+duplicates_df = pd.DataFrame(
+    [(len(students), ", ".join(students)) for students in duplicate_clusters],
+    columns=["Number of Students", "Students With Identical Code"],
+)
+
+with pd.ExcelWriter("grading_results.xlsx", engine="openpyxl") as writer:
+    result_df.to_excel(writer, sheet_name="Sheet1", index=False)
+    duplicates_df.to_excel(writer, sheet_name="Duplicates", index=False)
 
 print("Grading complete. Results saved to 'grading_results.xlsx'.")
+if duplicate_clusters:
+    print(
+        f"Found {len(duplicate_clusters)} groups of identical submissions, see the 'Duplicates' sheet."
+    )
 time.sleep(1)
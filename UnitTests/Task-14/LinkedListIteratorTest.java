@@ -0,0 +1,240 @@
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+
+/**
+ * Test class for iterating a LinkedList, with an Iterator and a Spliterator,
+ * so that it can be used in for-each loops and streams. The iterator should
+ * be fail-fast: once the list is changed by anything but the iterator, its
+ * next call throws ConcurrentModificationException. The spliterator should
+ * report SIZED and ORDERED, and split off a batch of elements for another
+ * thread when a parallel stream asks it to.
+ *
+ * Sequential and parallel streams sum 10^6 elements, and may take at most
+ * STREAM_FACTOR times as long as the same stream of java.util.LinkedList,
+ * plus MIN_BUDGET_NANOS. A stream that falls back to get(i) takes O(n^2), and
+ * stops as soon as it goes over budget. The times are printed as [perf]
+ * lines, which the grader collects for the results.
+ *
+ * Both are optional, so the tests are skipped for submissions without them.
+ * The iterator needs LinkedList<T> to implement Iterable<T>, and the
+ * spliterator needs it to override spliterator(), which Iterable otherwise
+ * implements with the iterator, without a size.
+ */
+public class LinkedListIteratorTest {
+    /** How many times as long as java.util.LinkedList a stream may take. */
+    private static final double STREAM_FACTOR = 10;
+    /** Added to every budget, so timer noise and the JIT can't fail a stream. */
+    private static final long MIN_BUDGET_NANOS = 200_000_000;
+    private static final int LARGE_SIZE = 1_000_000;
+    private static final int RUNS = 3;
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* The sequence of integers of LinkedListTest */
+    private int[] elements;
+    private LinkedList<Integer> list;
+
+    @Before
+    public void setUp() {
+        list = new LinkedList<Integer>();
+        elements = new int[] { -919, 388, 67, -248, -309, -725, 904, 53,
+                90, -469, -559, 256, 612, 366, -412, -221,
+                347, -921, -978, 324, -858, 480, -443, 891,
+                329, -5, 878, -538, 445, -366, 760, 52 };
+        for (int element : elements) {
+            list.addLast(element);
+        }
+    }
+
+    @Test
+    public void iteratorReturnsTheElementsInOrder() {
+        Iterator<Integer> iterator = iterator(list);
+        for (int element : elements) {
+            assertTrue("hasNext before the last element", iterator.hasNext());
+            assertEquals("next element of the list", element, (int) iterator.next());
+        }
+        assertFalse("hasNext after the last element", iterator.hasNext());
+        try {
+            iterator.next();
+            fail("next after the last element should throw NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void iteratorOfAnEmptyListHasNoElements() {
+        Iterator<Integer> iterator = iterator(new LinkedList<Integer>());
+        assertFalse("hasNext of an empty list", iterator.hasNext());
+    }
+
+    @Test
+    public void iteratorFailsFastWhenTheListChanges() {
+        checkFailsFast("addFirst", list -> list.addFirst(1));
+        checkFailsFast("addLast", list -> list.addLast(1));
+        checkFailsFast("removeFirst", list -> list.removeFirst());
+        checkFailsFast("clear", list -> list.clear());
+    }
+
+    @Test
+    public void spliteratorIsSizedAndOrdered() {
+        Spliterator<Integer> spliterator = spliterator(list);
+        assertTrue("the spliterator reports SIZED", spliterator.hasCharacteristics(Spliterator.SIZED));
+        assertTrue("the spliterator reports ORDERED", spliterator.hasCharacteristics(Spliterator.ORDERED));
+        assertEquals("estimateSize of a SIZED spliterator", elements.length, spliterator.estimateSize());
+
+        List<Integer> seen = new ArrayList<>();
+        spliterator.forEachRemaining(seen::add);
+        assertEquals("elements of the spliterator", toList(elements), seen);
+    }
+
+    @Test
+    public void spliteratorSplitsOffABatchFromTheFront() {
+        spliterator(new LinkedList<Integer>());
+        LinkedList<Integer> large = largeList();
+        Spliterator<Integer> rest = spliterator(large);
+        Spliterator<Integer> batch = rest.trySplit();
+        assertNotNull("trySplit of a spliterator over " + LARGE_SIZE + " elements", batch);
+        assertTrue("the batch reports SIZED", batch.hasCharacteristics(Spliterator.SIZED));
+        assertTrue("the batch is not empty", batch.estimateSize() > 0);
+        assertEquals("the sizes of the batch and the rest add up to the list", LARGE_SIZE,
+                batch.estimateSize() + rest.estimateSize());
+
+        // ORDERED: the batch holds the first elements, and the rest the ones after them
+        int[] next = { 0 };
+        Consumer<Integer> inOrder = element -> assertEquals("next element", next[0]++, (int) element);
+        batch.forEachRemaining(inOrder);
+        assertEquals("elements in the batch", LARGE_SIZE - rest.estimateSize(), next[0]);
+        rest.forEachRemaining(inOrder);
+        assertEquals("elements in the batch and the rest", LARGE_SIZE, next[0]);
+    }
+
+    @Test
+    public void sequentialAndParallelStreamsSumAMillionElements() {
+        spliterator(new LinkedList<Integer>());
+        LinkedList<Integer> large = largeList();
+        java.util.LinkedList<Integer> reference = new java.util.LinkedList<>();
+        for (int i = 0; i < LARGE_SIZE; i++) {
+            reference.addLast(i);
+        }
+        long expected = (long) LARGE_SIZE * (LARGE_SIZE - 1) / 2;
+
+        for (boolean parallel : new boolean[] { false, true }) {
+            String stream = parallel ? "parallel stream" : "sequential stream";
+            long referenceNanos = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                assertEquals("sum of java.util.LinkedList", expected,
+                        sum(reference.spliterator(), parallel, Long.MAX_VALUE, stream));
+                referenceNanos = Math.min(referenceNanos, System.nanoTime() - start);
+            }
+            long budget = (long) (STREAM_FACTOR * referenceNanos) + MIN_BUDGET_NANOS;
+            long nanos = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                assertEquals("sum of a " + stream + " of the list", expected,
+                        sum(spliterator(large), parallel, budget, stream));
+                nanos = Math.min(nanos, System.nanoTime() - start);
+            }
+            List<Integer> ordered = new ArrayList<>(LARGE_SIZE);
+            StreamSupport.stream(spliterator(large), parallel).forEachOrdered(ordered::add);
+            assertEquals("elements of a " + stream + " in encounter order", reference, ordered);
+            System.out.printf("[perf] LinkedList, n=%d: %s sum %.1f ms (java.util.LinkedList: %.1f ms, ratio "
+                    + "%.2f)%n", LARGE_SIZE, stream, nanos / 1e6, referenceNanos / 1e6,
+                    (double) nanos / referenceNanos);
+        }
+    }
+
+    /**
+     * The sum of a stream of the spliterator's elements, which fails as soon
+     * as the stream goes over its budget.
+     */
+    private static long sum(Spliterator<Integer> spliterator, boolean parallel, long budget, String stream) {
+        AtomicInteger count = new AtomicInteger();
+        long start = System.nanoTime();
+        return StreamSupport.stream(spliterator, parallel).mapToLong(element -> {
+            // Checked every 1024 elements, to keep the clock out of the measurement
+            if ((count.incrementAndGet() & 1023) == 0 && System.nanoTime() - start > budget) {
+                throw new AssertionError(String.format("A %s of LinkedList went over its budget of %.1f ms "
+                        + "(%.0f times java.util.LinkedList) after %d of %d elements. Does the spliterator get "
+                        + "each element with get(i) instead of following the nodes?", stream, budget / 1e6,
+                        STREAM_FACTOR, count.get(), LARGE_SIZE));
+            }
+            return element;
+        }).sum();
+    }
+
+    /**
+     * Checks that an iterator of a list of the elements throws
+     * ConcurrentModificationException once changeList has changed the list.
+     */
+    private void checkFailsFast(String change, Consumer<LinkedList<Integer>> changeList) {
+        LinkedList<Integer> list = new LinkedList<Integer>();
+        for (int element : elements) {
+            list.addLast(element);
+        }
+        Iterator<Integer> iterator = iterator(list);
+        iterator.next();
+        changeList.accept(list);
+        try {
+            iterator.next();
+            fail("next after " + change + " should throw ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            // Expected
+        } catch (NoSuchElementException e) {
+            fail("next after " + change + " should throw ConcurrentModificationException, not " + e);
+        }
+    }
+
+    /** The list 0, 1, ..., LARGE_SIZE - 1. */
+    private static LinkedList<Integer> largeList() {
+        LinkedList<Integer> large = new LinkedList<Integer>();
+        for (int i = 0; i < LARGE_SIZE; i++) {
+            large.addLast(i);
+        }
+        return large;
+    }
+
+    private static List<Integer> toList(int[] elements) {
+        List<Integer> list = new ArrayList<>();
+        for (int element : elements) {
+            list.add(element);
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Iterator<T> iterator(LinkedList<T> list) {
+        Object object = list;
+        Assume.assumeTrue("LinkedList doesn't implement Iterable", object instanceof Iterable);
+        return ((Iterable<T>) object).iterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Spliterator<T> spliterator(LinkedList<T> list) {
+        Object object = list;
+        Assume.assumeTrue("LinkedList doesn't implement Iterable", object instanceof Iterable);
+        try {
+            Assume.assumeTrue("LinkedList doesn't override spliterator()",
+                    LinkedList.class.getMethod("spliterator").getDeclaringClass() != Iterable.class);
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+        return ((Iterable<T>) object).spliterator();
+    }
+}
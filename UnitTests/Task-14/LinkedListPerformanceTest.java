@@ -0,0 +1,307 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/**
+ * Scale tests for LinkedList. Adds 10^6 elements at each end with addLast and
+ * addFirst, checking size, getFirst and getLast after each, and then removes
+ * all of them with removeFirst.
+ *
+ * The cost per operation is measured at 10^4, 10^5 and 10^6 elements, next
+ * to java.util.LinkedList in the same JVM. Some growth is expected from the
+ * memory hierarchy alone, so the growth from 10^4 elements may be at most
+ * COST_FACTOR times that of java.util.LinkedList. A list without a last
+ * reference, or whose size walks the chain, stops as soon as it goes over
+ * budget, and fails once every run at a size has.
+ *
+ * get(i) has to walk i nodes, so a loop of get(0), get(1), ... costs O(n^2).
+ * Its cost per get may grow at most COST_FACTOR times as much as that of
+ * java.util.LinkedList from GET_SIZES[0] to GET_SIZES[1] elements, which
+ * fails a get that does more than walk to the element. Each cost is the best
+ * of GET_RUNS runs, as a single run at GET_SIZES[0] takes only milliseconds.
+ * The costs are printed as [perf] lines, which the grader collects for the
+ * results.
+ */
+public class LinkedListPerformanceTest {
+    /** How many times as slow as java.util.LinkedList the list may be at BASE_SIZE elements. */
+    private static final double BASE_FACTOR = 25;
+    /** How many times the growth in cost of java.util.LinkedList the list's cost may grow. */
+    private static final double COST_FACTOR = 4;
+    /** Lower bound of the budgets, so timer noise can't fail small lists. */
+    private static final long MIN_BUDGET_NANOS = 50_000_000;
+    /** Time the warm-up may take, for lists too slow to warm up fully. */
+    private static final long WARM_UP_NANOS = 1_000_000_000;
+    private static final int BASE_SIZE = 10_000;
+    private static final int[] SIZES = { 100_000, 1_000_000 };
+    private static final int LARGE_SIZE = 1_000_000;
+    private static final int[] GET_SIZES = { 2_500, 20_000 };
+    private static final int GET_RUNS = 3;
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    private final Integer[] elements = elements(LARGE_SIZE);
+    /** Why the last run stopped early, or null if it did not. */
+    private String overBudget;
+
+    /**
+     * The operations of a list under test, so that LinkedList and
+     * java.util.LinkedList are measured by the same code.
+     */
+    private interface Operations {
+        void addFirst(Integer element);
+
+        void addLast(Integer element);
+
+        Integer removeFirst();
+
+        Integer getFirst();
+
+        Integer getLast();
+
+        Integer get(int index);
+
+        int size();
+    }
+
+    @Test
+    public void addAndRemoveAtTheEndsHaveConstantCost() {
+        long warmUpStart = System.nanoTime();
+        for (int round = 0; round < 20 && System.nanoTime() - warmUpStart < WARM_UP_NANOS; round++) {
+            exercise(referenceList(), BASE_SIZE, Long.MAX_VALUE, "");
+            exercise(linkedList(), BASE_SIZE, Long.MAX_VALUE, "");
+        }
+
+        double referenceBase = best(BASE_SIZE, Long.MAX_VALUE, true, "");
+        long budget = budget(BASE_FACTOR * referenceBase, operations(BASE_SIZE));
+        double base = best(BASE_SIZE, budget, false,
+                String.format("%.0f times the time java.util.LinkedList needs", BASE_FACTOR));
+        System.out.printf("[perf] LinkedList, n=%d: %.1f ns per operation (java.util.LinkedList: %.1f ns, "
+                + "ratio %.2f)%n", BASE_SIZE, base, referenceBase, base / referenceBase);
+
+        for (int size : SIZES) {
+            double reference = best(size, Long.MAX_VALUE, true, "");
+            double referenceGrowth = reference / referenceBase;
+            budget = budget(COST_FACTOR * referenceGrowth * base, operations(size));
+            double cost = best(size, budget, false, String.format("its cost at %d elements, times %.0f "
+                    + "times the growth in cost of java.util.LinkedList", BASE_SIZE, COST_FACTOR));
+            System.out.printf("[perf] LinkedList, n=%d: %.1f ns per operation, %.2f times n=%d "
+                    + "(java.util.LinkedList: %.1f ns, %.2f times n=%d)%n", size, cost, cost / base, BASE_SIZE,
+                    reference, referenceGrowth, BASE_SIZE);
+        }
+    }
+
+    @Test
+    public void sequentialGetWalksTheList() {
+        sequentialGet(referenceList(), GET_SIZES[0], Long.MAX_VALUE, ""); // Lets the JIT compile both first
+        sequentialGet(linkedList(), GET_SIZES[0], Long.MAX_VALUE, "");
+
+        double referenceBase = bestGet(GET_SIZES[0], Long.MAX_VALUE, true, "");
+        long budget = budget(BASE_FACTOR * referenceBase, GET_SIZES[0]);
+        double base = bestGet(GET_SIZES[0], budget, false,
+                String.format("%.0f times the time java.util.LinkedList needs", BASE_FACTOR));
+
+        int size = GET_SIZES[1];
+        double reference = bestGet(size, Long.MAX_VALUE, true, "");
+        double referenceGrowth = reference / referenceBase;
+        budget = budget(COST_FACTOR * referenceGrowth * base, size);
+        double cost = bestGet(size, budget, false, String.format("its cost per get at %d elements, times %.0f "
+                + "times the growth in cost of java.util.LinkedList", GET_SIZES[0], COST_FACTOR));
+        // get(i) walks i nodes, n * (n - 1) / 2 of them for the whole loop
+        System.out.printf("[perf] LinkedList, sequential get(i) over n=%d: %.1f ms, %.2f us per get, %.2f ns "
+                + "per node walked, %.2f times n=%d (java.util.LinkedList: %.2f us per get, %.2f times)%n", size,
+                cost * size / 1e6, cost / 1e3, cost * 2 / (size - 1), cost / base, GET_SIZES[0],
+                reference / 1e3, referenceGrowth);
+    }
+
+    /**
+     * The best cost per operation, in nanoseconds, of a few runs of exercise
+     * on the LinkedList or on java.util.LinkedList. A single run over budget
+     * may be a pause of the machine, so it is retried, and fails after three.
+     */
+    private double best(int size, long budget, boolean reference, String context) {
+        long best = Long.MAX_VALUE;
+        int runs = size <= 100_000 ? 3 : 1;
+        for (int run = 0; run < runs || best == Long.MAX_VALUE && run < 3; run++) {
+            Operations list = reference ? referenceList() : linkedList();
+            best = Math.min(best, exercise(list, size, budget, context));
+        }
+        if (best == Long.MAX_VALUE) {
+            fail(overBudget);
+        }
+        return (double) best / operations(size);
+    }
+
+    /**
+     * Adds the first size elements at both ends of the empty list, checking
+     * size, getFirst and getLast after each, and removes them again with
+     * removeFirst. Returns the time spent, or stops as soon as it goes over
+     * the budget and returns Long.MAX_VALUE.
+     */
+    private long exercise(Operations list, int size, long budget, String context) {
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            list.addLast(elements[i]);
+            list.addFirst(elements[i]);
+            assertEquals("size after adding at both ends", 2 * (i + 1), list.size());
+            assertSame("getFirst after addFirst", elements[i], list.getFirst());
+            assertSame("getLast after addLast", elements[i], list.getLast());
+            if ((overBudget = overBudget(start, budget, i, size, "adding", context)) != null) {
+                return Long.MAX_VALUE;
+            }
+        }
+        // The list is elements size - 1, ..., 0, 0, ..., size - 1
+        for (int i = 0; i < 2 * size; i++) {
+            Integer expected = elements[i < size ? size - 1 - i : i - size];
+            assertSame("removeFirst returns the first element", expected, list.removeFirst());
+            if ((overBudget = overBudget(start, budget, i, 2 * size, "removing", context)) != null) {
+                return Long.MAX_VALUE;
+            }
+        }
+        assertEquals("size after removing every element", 0, list.size());
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * The best cost per get, in nanoseconds, of GET_RUNS runs of
+     * sequentialGet on the LinkedList or on java.util.LinkedList. Fails if
+     * every run went over the budget.
+     */
+    private double bestGet(int size, long budget, boolean reference, String context) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < GET_RUNS; run++) {
+            Operations list = reference ? referenceList() : linkedList();
+            best = Math.min(best, sequentialGet(list, size, budget, context));
+        }
+        if (best == Long.MAX_VALUE) {
+            fail(overBudget);
+        }
+        return (double) best / size;
+    }
+
+    /**
+     * Calls get(i) for every index of a list of size elements, checking each,
+     * and returns the time spent. Stops as soon as it goes over the budget,
+     * setting overBudget.
+     */
+    private long sequentialGet(Operations list, int size, long budget, String context) {
+        for (int i = 0; i < size; i++) {
+            list.addLast(elements[i]);
+        }
+        overBudget = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            assertSame("get(i) returns the element at index i", elements[i], list.get(i));
+            // Every get walks the list, so the clock costs little next to 16 of them
+            if ((i & 15) == 15 && System.nanoTime() - start > budget) {
+                overBudget = String.format("LinkedList went over its budget of %.1f ms (%s) calling get(i) "
+                        + "for i up to %d with %d elements. get(i) should only walk the i nodes before the "
+                        + "element.", budget / 1e6, context, i, size);
+                return Long.MAX_VALUE;
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /** The failure message if the time spent is over the budget, and null otherwise. */
+    private static String overBudget(long start, long budget, int index, int size, String operation,
+            String context) {
+        // Checked every 1024 operations, and at the end, to keep the clock out of the measurement
+        if ((index & 1023) != 1023 && index != size - 1) {
+            return null;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > budget) {
+            return String.format("LinkedList went over its budget of %.1f ms (%s) with %d elements, while %s "
+                    + "element %d. Operations at the ends should not walk the list: does it keep a reference "
+                    + "to its last node, and count its size as it goes?", budget / 1e6, context, size, operation,
+                    index + 1);
+        }
+        return null;
+    }
+
+    private static long budget(double nanosPerOperation, long operations) {
+        return Math.max((long) (nanosPerOperation * operations), MIN_BUDGET_NANOS);
+    }
+
+    /** Per element: addLast, addFirst, size, getFirst, getLast and two removeFirst. */
+    private static long operations(int size) {
+        return 7L * size;
+    }
+
+    private static Operations linkedList() {
+        LinkedList<Integer> list = new LinkedList<Integer>();
+        return new Operations() {
+            public void addFirst(Integer element) {
+                list.addFirst(element);
+            }
+
+            public void addLast(Integer element) {
+                list.addLast(element);
+            }
+
+            public Integer removeFirst() {
+                return list.removeFirst();
+            }
+
+            public Integer getFirst() {
+                return list.getFirst();
+            }
+
+            public Integer getLast() {
+                return list.getLast();
+            }
+
+            public Integer get(int index) {
+                return list.get(index);
+            }
+
+            public int size() {
+                return list.size();
+            }
+        };
+    }
+
+    private static Operations referenceList() {
+        java.util.LinkedList<Integer> list = new java.util.LinkedList<>();
+        return new Operations() {
+            public void addFirst(Integer element) {
+                list.addFirst(element);
+            }
+
+            public void addLast(Integer element) {
+                list.addLast(element);
+            }
+
+            public Integer removeFirst() {
+                return list.removeFirst();
+            }
+
+            public Integer getFirst() {
+                return list.getFirst();
+            }
+
+            public Integer getLast() {
+                return list.getLast();
+            }
+
+            public Integer get(int index) {
+                return list.get(index);
+            }
+
+            public int size() {
+                return list.size();
+            }
+        };
+    }
+
+    /** Distinct Integers, created up front so that boxing is not measured. */
+    private static Integer[] elements(int size) {
+        Integer[] elements = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = Integer.valueOf(i * 0x9E3779B1);
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,426 @@
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Scale tests for the HashSet implementation. Runs the SetTest tests, as well
+ * as tests that add, look up and remove up to 10^6 Integers in a HashSet
+ * created with capacity 16.
+ *
+ * The cost per operation is measured at 10^4, 10^5 and 10^6 elements, next
+ * to java.util.HashSet in the same JVM. Some growth is expected from the
+ * memory hierarchy alone, so the growth from 10^4 elements may be at most
+ * COST_FACTOR times that of java.util.HashSet. A set that never grows its
+ * table, or that rehashes every element on every add, stops as soon as it
+ * goes over budget, and fails once every run at a size has. The table
+ * itself is found through reflection to check that it grows; its capacity,
+ * load factor and bucket sizes are printed as [perf] lines, which the grader
+ * collects for the results.
+ *
+ * A collision storm of SingleHashDistinct elements, which all land in the same
+ * bucket, measures how the latency of each operation grows with the bucket.
+ * It is only reported: a chained set is expected to go linear here.
+ */
+public class HashSetPerformanceTest extends SetTest {
+    /** How many times as slow as java.util.HashSet the set may be at BASE_SIZE elements. */
+    private static final double BASE_FACTOR = 25;
+    /** How many times the growth in cost of java.util.HashSet the set's cost may grow. */
+    private static final double COST_FACTOR = 4;
+    /** Lower bound of the budgets, so timer noise can't fail small sets. */
+    private static final long MIN_BUDGET_NANOS = 50_000_000;
+    /** Time the warm-up may take, for sets too slow to warm up fully. */
+    private static final long WARM_UP_NANOS = 1_000_000_000;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int BASE_SIZE = 10_000;
+    private static final int[] SIZES = { 100_000, 1_000_000 };
+    private static final int LARGE_SIZE = 1_000_000;
+    /** Elements per table slot a chained table may hold before it should have grown. */
+    private static final double MAX_LOAD_FACTOR = 4;
+    private static final int[] STORM_SIZES = { 1_000, 10_000 };
+
+    // Shadows the 5 second limit of SetTest, which is too short for 10^6 elements
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    // Static, as JUnit creates an instance for each of the SetTest tests as well
+    private static Integer[] elements;
+    private static Integer[] absent;
+    /** Why the last run of exercise stopped early, or null if it did not. */
+    private String overBudget;
+
+    @BeforeClass
+    public static void createElements() {
+        elements = elements(0, LARGE_SIZE);
+        absent = elements(LARGE_SIZE, 2 * LARGE_SIZE);
+    }
+
+    @Override
+    protected Set<Integer> getIntegerSet(int minCapacity) {
+        return new HashSet<Integer>(minCapacity);
+    }
+
+    /**
+     * The operations of a set under test, so that the HashSet and
+     * java.util.HashSet are measured by the same code.
+     */
+    private interface Operations {
+        boolean add(Integer element);
+
+        boolean contains(Integer element);
+
+        boolean remove(Integer element);
+
+        int size();
+    }
+
+    @Test
+    public void addContainsAndRemoveHaveAmortizedConstantCost() {
+        long warmUpStart = System.nanoTime();
+        for (int round = 0; round < 20 && System.nanoTime() - warmUpStart < WARM_UP_NANOS; round++) {
+            exercise(referenceSet(), BASE_SIZE, Long.MAX_VALUE, "");
+            exercise(hashSet(), BASE_SIZE, Long.MAX_VALUE, "");
+        }
+
+        double referenceBase = best(BASE_SIZE, Long.MAX_VALUE, true, "");
+        long budget = budget(BASE_FACTOR * referenceBase, BASE_SIZE);
+        double base = best(BASE_SIZE, budget, false,
+                String.format("%.0f times the time java.util.HashSet needs", BASE_FACTOR));
+        System.out.printf("[perf] HashSet, n=%d: %.1f ns per operation (java.util.HashSet: %.1f ns, "
+                + "ratio %.2f)%n", BASE_SIZE, base, referenceBase, base / referenceBase);
+        assertTrue(String.format("HashSet took %.1f ns per operation on %d elements, over %.0f times "
+                + "java.util.HashSet (%.1f ns). Its operations probably go through long buckets or the "
+                + "whole table.", base, BASE_SIZE, BASE_FACTOR, referenceBase),
+                base <= BASE_FACTOR * referenceBase);
+
+        for (int size : SIZES) {
+            double reference = best(size, Long.MAX_VALUE, true, "");
+            double referenceGrowth = reference / referenceBase;
+            budget = budget(COST_FACTOR * referenceGrowth * base, size);
+            double cost = best(size, budget, false, String.format("its cost at %d elements, times %.0f "
+                    + "times the growth in cost of java.util.HashSet", BASE_SIZE, COST_FACTOR));
+            System.out.printf("[perf] HashSet, n=%d: %.1f ns per operation, %.2f times n=%d "
+                    + "(java.util.HashSet: %.1f ns, %.2f times n=%d)%n", size, cost, cost / base, BASE_SIZE, reference,
+                    referenceGrowth, BASE_SIZE);
+        }
+    }
+
+    @Test
+    public void tableGrowsWithTheElements() throws IllegalAccessException {
+        Set<Integer> set = getIntegerSet(INITIAL_CAPACITY);
+        Map<Field, Integer> initialCapacities = new HashMap<>();
+        for (Field field : tableCandidates(set.getClass())) {
+            initialCapacities.put(field, capacity(field.get(set)));
+        }
+        Assume.assumeFalse("Found no array or list in HashSet to inspect as its table",
+                initialCapacities.isEmpty());
+
+        Operations reference = referenceSet();
+        long referenceStart = System.nanoTime();
+        for (Integer element : elements) {
+            reference.add(element);
+        }
+        long budget = Math.max((long) (BASE_FACTOR * COST_FACTOR * (System.nanoTime() - referenceStart)),
+                MIN_BUDGET_NANOS);
+
+        // The table is the longest array or list, once the set holds some elements
+        Field tableField = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < LARGE_SIZE; i++) {
+            set.add(elements[i]);
+            String failure = overBudget(start, budget, i, LARGE_SIZE, "adding", String.format("%.0f times "
+                    + "the time java.util.HashSet needs to add them", BASE_FACTOR * COST_FACTOR));
+            if (failure != null) {
+                fail(failure);
+            }
+            if (i + 1 == BASE_SIZE || i + 1 == LARGE_SIZE) {
+                tableField = longest(initialCapacities.keySet(), set);
+                int capacity = capacity(tableField.get(set));
+                assertTrue("The table '" + tableField.getName() + "' still has capacity " + capacity
+                        + " after adding " + (i + 1) + " elements to a set created with capacity "
+                        + INITIAL_CAPACITY + ". It should grow when it fills up.",
+                        capacity > initialCapacities.get(tableField));
+            }
+        }
+        assertEquals("size after adding " + LARGE_SIZE + " unique elements", LARGE_SIZE, set.size());
+
+        Object table = tableField.get(set);
+        int capacity = capacity(table);
+        int nonEmptyBuckets = 0;
+        int longestBucket = 0;
+        Iterable<?> buckets = table instanceof List ? (List<?>) table : Arrays.asList((Object[]) table);
+        for (Object bucket : buckets) {
+            int bucketSize = bucketSize(bucket);
+            if (bucketSize > 0) {
+                nonEmptyBuckets++;
+                longestBucket = Math.max(longestBucket, bucketSize);
+            }
+        }
+        double loadFactor = (double) LARGE_SIZE / capacity;
+        System.out.printf("[perf] HashSet, n=%d: table '%s' of capacity %d (started at %d), load factor "
+                + "%.2f, average non-empty bucket %.2f, longest bucket %d%n", LARGE_SIZE,
+                tableField.getName(), capacity, initialCapacities.get(tableField), loadFactor,
+                (double) LARGE_SIZE / nonEmptyBuckets, longestBucket);
+        assertTrue(String.format("The table '%s' has capacity %d for %d elements, a load factor of %.1f. "
+                + "It should grow before the load factor gets much above 1.", tableField.getName(),
+                capacity, LARGE_SIZE, loadFactor), loadFactor <= MAX_LOAD_FACTOR);
+    }
+
+    @Test
+    public void collisionStormLatency() {
+        collisionStorm(STORM_SIZES[0]); // Lets the JIT compile the set first
+        for (int size : STORM_SIZES) {
+            long[] nanos = collisionStorm(size);
+            System.out.printf("[perf] HashSet, %d colliding SingleHashDistinct: add %.2f us, contains %.2f us, "
+                    + "remove %.2f us per operation%n", size, nanos[0] / 1e3 / size, nanos[1] / 1e3 / size,
+                    nanos[2] / 1e3 / size);
+        }
+    }
+
+    /**
+     * Adds size colliding elements to a new set, then looks them up and
+     * removes them in random order, and returns the nanoseconds each of the
+     * three took.
+     */
+    private static long[] collisionStorm(int size) {
+        SingleHashDistinct[] colliding = new SingleHashDistinct[size];
+        for (int i = 0; i < size; i++) {
+            colliding[i] = new SingleHashDistinct();
+        }
+        SingleHashDistinct[] shuffled = colliding.clone();
+        Collections.shuffle(Arrays.asList(shuffled), new Random(size));
+        Set<SingleHashDistinct> set = new HashSet<SingleHashDistinct>(INITIAL_CAPACITY);
+
+        long start = System.nanoTime();
+        for (SingleHashDistinct element : colliding) {
+            assertTrue("add is true for a colliding element not in the set", set.add(element));
+        }
+        long added = System.nanoTime();
+        for (SingleHashDistinct element : shuffled) {
+            assertTrue("contains is true for an added colliding element", set.contains(element));
+        }
+        long lookedUp = System.nanoTime();
+        for (SingleHashDistinct element : shuffled) {
+            assertTrue("remove is true for a colliding element in the set", set.remove(element));
+        }
+        long removed = System.nanoTime();
+        assertEquals("size after removing every colliding element", 0, set.size());
+        return new long[] { added - start, lookedUp - added, removed - lookedUp };
+    }
+
+    /**
+     * The best cost per operation, in nanoseconds, of a few runs of exercise
+     * on the HashSet or on java.util.HashSet. A single run over budget may be
+     * a pause of the machine, so it is retried, and fails after three.
+     */
+    private double best(int size, long budget, boolean reference, String context) {
+        long best = Long.MAX_VALUE;
+        int runs = size <= 100_000 ? 3 : 1;
+        for (int run = 0; run < runs || best == Long.MAX_VALUE && run < 3; run++) {
+            Operations set = reference ? referenceSet() : hashSet();
+            best = Math.min(best, exercise(set, size, budget, context));
+        }
+        if (best == Long.MAX_VALUE) {
+            fail(overBudget);
+        }
+        return (double) best / operations(size);
+    }
+
+    /**
+     * Adds the first size elements to the empty set, looks them up as well as
+     * as many absent ones, and removes them again, checking every result.
+     * Returns the time spent, or stops as soon as it goes over the budget and
+     * returns Long.MAX_VALUE.
+     */
+    private long exercise(Operations set, int size, long budget, String context) {
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            assertTrue("add is true for an element not in the set", set.add(elements[i]));
+            if ((overBudget = overBudget(start, budget, i, size, "adding", context)) != null) {
+                return Long.MAX_VALUE;
+            }
+        }
+        assertEquals("size after adding " + size + " unique elements", size, set.size());
+        for (int i = 0; i < size; i++) {
+            assertTrue("contains is true for an added element", set.contains(elements[i]));
+            assertFalse("contains is false for an element not in the set", set.contains(absent[i]));
+            if ((overBudget = overBudget(start, budget, i, size, "looking up", context)) != null) {
+                return Long.MAX_VALUE;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            assertTrue("remove is true for an element in the set", set.remove(elements[i]));
+            if ((overBudget = overBudget(start, budget, i, size, "removing", context)) != null) {
+                return Long.MAX_VALUE;
+            }
+        }
+        assertEquals("size after removing every element", 0, set.size());
+        return System.nanoTime() - start;
+    }
+
+    /** The failure message if the time spent is over the budget, and null otherwise. */
+    private static String overBudget(long start, long budget, int index, int size, String operation,
+            String context) {
+        // Checked every 1024 operations, and at the end, to keep the clock out of the measurement
+        if ((index & 1023) != 1023 && index != size - 1) {
+            return null;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > budget) {
+            return String.format("HashSet went over its budget of %.1f ms (%s) with %d elements, while %s "
+                    + "element %d. The cost per operation should not grow with the number of elements: "
+                    + "does the table grow when it fills up, and only then?", budget / 1e6, context, size,
+                    operation, index + 1);
+        }
+        return null;
+    }
+
+    private static long budget(double nanosPerOperation, int size) {
+        return Math.max((long) (nanosPerOperation * operations(size)), MIN_BUDGET_NANOS);
+    }
+
+    /** Four operations per element: add, two lookups and remove. */
+    private static long operations(int size) {
+        return 4L * size;
+    }
+
+    private Operations hashSet() {
+        Set<Integer> set = getIntegerSet(INITIAL_CAPACITY);
+        return new Operations() {
+            public boolean add(Integer element) {
+                return set.add(element);
+            }
+
+            public boolean contains(Integer element) {
+                return set.contains(element);
+            }
+
+            public boolean remove(Integer element) {
+                return set.remove(element);
+            }
+
+            public int size() {
+                return set.size();
+            }
+        };
+    }
+
+    private static Operations referenceSet() {
+        java.util.Set<Integer> set = new java.util.HashSet<>(INITIAL_CAPACITY);
+        return new Operations() {
+            public boolean add(Integer element) {
+                return set.add(element);
+            }
+
+            public boolean contains(Integer element) {
+                return set.contains(element);
+            }
+
+            public boolean remove(Integer element) {
+                return set.remove(element);
+            }
+
+            public int size() {
+                return set.size();
+            }
+        };
+    }
+
+    /**
+     * Distinct Integers spread over the whole int range, created up front so
+     * that boxing is not measured. Multiplying by an odd constant never maps
+     * two indices to the same int.
+     */
+    private static Integer[] elements(int from, int to) {
+        Integer[] elements = new Integer[to - from];
+        for (int i = from; i < to; i++) {
+            elements[i - from] = i * 0x9E3779B1;
+        }
+        return elements;
+    }
+
+    /** The instance fields of the set that could be its table: arrays of objects and lists. */
+    private static Collection<Field> tableCandidates(Class<?> setClass) {
+        Map<String, Field> candidates = new HashMap<>();
+        for (Class<?> c = setClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                Class<?> type = field.getType();
+                boolean isTable = (type.isArray() && !type.getComponentType().isPrimitive())
+                        || List.class.isAssignableFrom(type);
+                if (isTable && !Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    candidates.put(c.getName() + "." + field.getName(), field);
+                }
+            }
+        }
+        return candidates.values();
+    }
+
+    private static Field longest(Collection<Field> fields, Object set) throws IllegalAccessException {
+        Field longest = null;
+        for (Field field : fields) {
+            if (longest == null || capacity(field.get(set)) > capacity(longest.get(set))) {
+                longest = field;
+            }
+        }
+        return longest;
+    }
+
+    private static int capacity(Object table) {
+        if (table == null) {
+            return 0;
+        }
+        return table instanceof List ? ((List<?>) table).size() : Array.getLength(table);
+    }
+
+    /**
+     * The number of elements in a slot of the table: the size of a collection,
+     * the length of a chain of nodes, or one for any other object.
+     */
+    private static int bucketSize(Object bucket) throws IllegalAccessException {
+        if (bucket == null) {
+            return 0;
+        }
+        if (bucket instanceof Collection) {
+            return ((Collection<?>) bucket).size();
+        }
+        Field next = nextField(bucket.getClass());
+        if (next == null) {
+            return 1;
+        }
+        int size = 0;
+        for (Object node = bucket; node != null; node = next.get(node)) {
+            size++;
+        }
+        return size;
+    }
+
+    /** The field of a node class that points to another node, if there is one. */
+    private static Field nextField(Class<?> nodeClass) {
+        if (nodeClass.getName().startsWith("java.")) {
+            return null;
+        }
+        for (Field field : nodeClass.getDeclaredFields()) {
+            Class<?> type = field.getType();
+            if (!Modifier.isStatic(field.getModifiers()) && type != Object.class
+                    && type.isAssignableFrom(nodeClass)) {
+                field.setAccessible(true);
+                return field;
+            }
+        }
+        return null;
+    }
+}
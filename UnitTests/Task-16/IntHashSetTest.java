@@ -0,0 +1,352 @@
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Test class for IntHashSet, a set of primitive ints without boxing, such as
+ * an open addressing hash table. Runs the same cases as SetTest on ints, as
+ * well as tests aimed at open addressing: 0 and -1, which are often used to
+ * mark free slots, long runs of adds and removes, which fill a table that
+ * leaves tombstones, and growing from a small capacity.
+ *
+ * The memory each element takes at 10^6 elements is measured next to the
+ * boxed HashSet and java.util.HashSet and printed as [perf] lines. IntHashSet
+ * has to take less than MAX_BYTES_PER_ELEMENT, which a set of Integers can't:
+ * every Integer takes 16 bytes, and a reference to it at least 4 more. An int
+ * table that grows by doubling and is at least 3/8 full stays within 11 bytes.
+ *
+ * IntHashSet is optional, so it is loaded by name and the tests are skipped
+ * for submissions without it. It needs a constructor that takes the initial
+ * capacity, and public methods boolean add(int), boolean remove(int),
+ * boolean contains(int) and int size().
+ */
+public class IntHashSetTest {
+    private static final int CAPACITY = 20;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int GROWTH_SIZE = 100_000;
+    private static final int CHURN_OPERATIONS = 1_000_000;
+    private static final int MEMORY_SIZE = 1_000_000;
+    private static final double MAX_BYTES_PER_ELEMENT = 20;
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    private IntSet set;
+    private int[] uniqueSetElements;
+    private int[] elementsNotInSet;
+
+    @Before
+    public void setUp() {
+        // Arrange
+        set = new IntSet(CAPACITY);
+        uniqueSetElements =
+            new int[] {-234, 32, 443, Integer.MAX_VALUE, Integer.MIN_VALUE, 0, -231};
+        // -2 as in SetTest: every element is more than 2 away from the others
+        elementsNotInSet = Arrays.stream(uniqueSetElements).map(elem -> elem - 2).toArray();
+
+        for (int elem : uniqueSetElements) {
+            set.add(elem);
+        }
+    }
+
+    @Test
+    public void containsIsTrueWhenElementIsInSet() {
+        for (int elem : uniqueSetElements) {
+            assertThat(set.contains(elem), is(true));
+        }
+    }
+
+    @Test
+    public void containsIsFalseWhenElementIsNotInSet() {
+        for (int elem : elementsNotInSet) {
+            assertThat(set.contains(elem), is(false));
+        }
+    }
+
+    @Test
+    public void containsIsFalseForRemovedElements() {
+        for (int elem : uniqueSetElements) {
+            set.remove(elem);
+            assertThat(set.contains(elem), is(false));
+        }
+    }
+
+    @Test
+    public void addUniqueElementsIncrementsSize() {
+        IntSet set = new IntSet(CAPACITY);
+        int expectedSize = 0;
+        for (int elem : uniqueSetElements) {
+            expectedSize++;
+            set.add(elem);
+            assertThat(set.size(), equalTo(expectedSize));
+        }
+    }
+
+    @Test
+    public void addDuplicatesDoesNotIncreaseSize() {
+        for (int elem : uniqueSetElements) {
+            set.add(elem);
+        }
+        assertThat(set.size(), equalTo(uniqueSetElements.length));
+    }
+
+    @Test
+    public void removeElementsInSetDecrementsSize() {
+        int expectedSize = uniqueSetElements.length;
+        for (int elem : uniqueSetElements) {
+            expectedSize--;
+            set.remove(elem);
+            assertThat(set.size(), equalTo(expectedSize));
+        }
+    }
+
+    @Test
+    public void removeElementsNotInSetDoesNotDecrementSize() {
+        for (int elem : elementsNotInSet) {
+            set.remove(elem);
+        }
+        assertThat(set.size(), equalTo(uniqueSetElements.length));
+    }
+
+    @Test
+    public void removeElementsDoesNotDecrementSizeWhenSetIsEmpty() {
+        IntSet emptySet = new IntSet(CAPACITY);
+        for (int elem : uniqueSetElements) {
+            emptySet.remove(elem);
+        }
+        assertThat(emptySet.size(), equalTo(0));
+    }
+
+    @Test
+    public void addIsTrueWhenElementNotInSet() {
+        IntSet set = new IntSet(CAPACITY);
+        for (int elem : uniqueSetElements) {
+            assertThat(set.add(elem), is(true));
+        }
+    }
+
+    @Test
+    public void addIsFalseForDuplicates() {
+        for (int elem : uniqueSetElements) {
+            assertThat(set.add(elem), is(false));
+        }
+    }
+
+    @Test
+    public void removeIsTrueWhenElementIsInSet() {
+        for (int elem : uniqueSetElements) {
+            assertThat(set.remove(elem), is(true));
+        }
+    }
+
+    @Test
+    public void removeIsFalseWhenElementIsNotInSet() {
+        for (int elem : elementsNotInSet) {
+            assertThat(set.remove(elem), is(false));
+        }
+    }
+
+    @Test
+    public void removeIsFalseWhenSetIsEmpty() {
+        IntSet emptySet = new IntSet(CAPACITY);
+        for (int elem : uniqueSetElements) {
+            assertThat(emptySet.remove(elem), is(false));
+        }
+    }
+
+    @Test
+    public void zeroAndMinusOneAreOrdinaryElements() {
+        IntSet set = new IntSet(CAPACITY);
+        assertFalse("contains(0) in an empty set", set.contains(0));
+        assertFalse("contains(-1) in an empty set", set.contains(-1));
+        assertTrue("add(0) to an empty set", set.add(0));
+        assertFalse("contains(-1) after add(0)", set.contains(-1));
+        assertTrue("add(-1) after add(0)", set.add(-1));
+        assertThat(set.size(), equalTo(2));
+        assertTrue("remove(0)", set.remove(0));
+        assertFalse("contains(0) after remove(0)", set.contains(0));
+        assertTrue("contains(-1) after remove(0)", set.contains(-1));
+        assertThat(set.size(), equalTo(1));
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        IntSet set = new IntSet(INITIAL_CAPACITY);
+        for (int i = 0; i < GROWTH_SIZE; i++) {
+            assertTrue("add is true for an element not in the set", set.add(spread(i)));
+        }
+        assertThat(set.size(), equalTo(GROWTH_SIZE));
+        // Removing every other element leaves holes in the probe sequences of the rest
+        for (int i = 0; i < GROWTH_SIZE; i += 2) {
+            assertTrue("remove is true for an element in the set", set.remove(spread(i)));
+        }
+        for (int i = 0; i < GROWTH_SIZE; i++) {
+            assertEquals("contains after removing every other of " + GROWTH_SIZE + " elements",
+                    i % 2 == 1, set.contains(spread(i)));
+        }
+        assertThat(set.size(), equalTo(GROWTH_SIZE / 2));
+    }
+
+    @Test
+    public void manyAddsAndRemovesDoNotFillTheTable() {
+        // Every element is new, so a table that leaves tombstones fills up unless it cleans them
+        IntSet set = new IntSet(INITIAL_CAPACITY);
+        for (int i = 0; i < CHURN_OPERATIONS; i++) {
+            assertTrue("add is true for an element not in the set", set.add(i));
+            assertTrue("remove is true for the element just added", set.remove(i));
+        }
+        assertThat(set.size(), equalTo(0));
+        assertFalse("contains is false after every element was removed", set.contains(CHURN_OPERATIONS - 1));
+    }
+
+    @Test
+    public void storesElementsWithoutBoxing() {
+        int[] elements = new int[MEMORY_SIZE];
+        for (int i = 0; i < MEMORY_SIZE; i++) {
+            elements[i] = spread(i);
+        }
+        double intBytes = bytesPerElement(() -> {
+            IntSet set = new IntSet(INITIAL_CAPACITY);
+            for (int elem : elements) {
+                set.add(elem);
+            }
+            return set;
+        });
+        double boxedBytes = bytesPerElement(() -> {
+            Set<Integer> set = new HashSet<Integer>(INITIAL_CAPACITY);
+            for (int elem : elements) {
+                set.add(elem);
+            }
+            return set;
+        });
+        double referenceBytes = bytesPerElement(() -> {
+            java.util.Set<Integer> set = new java.util.HashSet<>(INITIAL_CAPACITY);
+            for (int elem : elements) {
+                set.add(elem);
+            }
+            return set;
+        });
+        System.out.printf("[perf] IntHashSet, n=%d: %.1f bytes per element (HashSet: %.1f bytes, "
+                + "java.util.HashSet: %.1f bytes)%n", MEMORY_SIZE, intBytes, boxedBytes, referenceBytes);
+        assertTrue(String.format("IntHashSet takes %.1f bytes per element at %d elements, where an Integer "
+                + "and a reference to it alone take %.0f. Does it store its elements as Integers?", intBytes,
+                MEMORY_SIZE, MAX_BYTES_PER_ELEMENT), intBytes < MAX_BYTES_PER_ELEMENT);
+    }
+
+    /**
+     * The heap memory the built set holds on to, per element. The elements
+     * are created before the measurement, except Integers that the set boxes.
+     */
+    private static double bytesPerElement(Supplier<Object> build) {
+        long before = usedMemory();
+        Object set = build.get();
+        long after = usedMemory();
+        Reference.reachabilityFence(set);
+        return (double) (after - before) / MEMORY_SIZE;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Distinct ints spread over the whole int range. Multiplying by an odd
+     * constant never maps two indices to the same int.
+     */
+    private static int spread(int i) {
+        return i * 0x9E3779B1;
+    }
+
+    /**
+     * IntHashSet, called through method handles so that the tests compile
+     * without it.
+     */
+    private static final class IntSet {
+        private static final MethodType INT_TO_BOOLEAN = MethodType.methodType(boolean.class, int.class);
+
+        private final MethodHandle add;
+        private final MethodHandle remove;
+        private final MethodHandle contains;
+        private final MethodHandle size;
+
+        IntSet(int capacity) {
+            Class<?> setClass;
+            try {
+                setClass = Class.forName("IntHashSet");
+            } catch (ClassNotFoundException e) {
+                Assume.assumeNoException("The submission has no IntHashSet", e);
+                throw new AssertionError(e);
+            }
+            try {
+                Object instance = setClass.getDeclaredConstructor(int.class).newInstance(capacity);
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                add = lookup.findVirtual(setClass, "add", INT_TO_BOOLEAN).bindTo(instance);
+                remove = lookup.findVirtual(setClass, "remove", INT_TO_BOOLEAN).bindTo(instance);
+                contains = lookup.findVirtual(setClass, "contains", INT_TO_BOOLEAN).bindTo(instance);
+                size = lookup.findVirtual(setClass, "size", MethodType.methodType(int.class)).bindTo(instance);
+            } catch (ReflectiveOperationException e) {
+                throw new AssertionError("IntHashSet could not be created: " + e, e);
+            }
+        }
+
+        boolean add(int elem) {
+            try {
+                return (boolean) add.invokeExact(elem);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        boolean remove(int elem) {
+            try {
+                return (boolean) remove.invokeExact(elem);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        boolean contains(int elem) {
+            try {
+                return (boolean) contains.invokeExact(elem);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        int size() {
+            try {
+                return (int) size.invokeExact();
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        /** Exceptions of IntHashSet itself fail the test as they are. */
+        private static RuntimeException rethrow(Throwable e) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new AssertionError("IntHashSet threw " + e, e);
+        }
+    }
+}
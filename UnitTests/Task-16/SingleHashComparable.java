@@ -0,0 +1,33 @@
+/**
+ * A helper class for testing hash collisions in sets that keep colliding
+ * elements in a tree. Like SingleHashDistinct, instances equal only themselves
+ * and all instances have the same hashCode, but they are also Comparable,
+ * ordered by when they were created.
+ */
+class SingleHashComparable implements Comparable<SingleHashComparable> {
+    private static final int HASH = 0;
+    private static long created = 0;
+
+    private final long serial;
+
+    SingleHashComparable() {
+        synchronized (SingleHashComparable.class) {
+            serial = created++;
+        }
+    }
+
+    @Override
+    public int compareTo(SingleHashComparable other) {
+        return Long.compare(serial, other.serial);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return HASH;
+    }
+}
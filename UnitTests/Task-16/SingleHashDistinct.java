@@ -0,0 +1,18 @@
+/**
+ * A helper class for testing hash collisions, shared by the scale and
+ * treeifying tests. Like SingleHashUnequal in HashSetTest, instances equal
+ * only themselves, and all instances have the same hashCode.
+ */
+class SingleHashDistinct {
+    private static final int HASH = 0;
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return HASH;
+    }
+}
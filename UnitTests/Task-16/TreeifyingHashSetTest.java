@@ -0,0 +1,172 @@
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Test class for TreeifyingHashSet, a HashSet whose long buckets switch to a
+ * balanced tree when their elements are Comparable. Runs the SetTest tests,
+ * as well as collision storms where every element lands in the same bucket.
+ *
+ * With SingleHashComparable elements, the cost per operation may grow at most
+ * COST_FACTOR times from 10^4 to 10^5 colliding elements. That allows for
+ * O(log n) operations, but not for the O(n) of a plain chained set, which
+ * fails as soon as it goes over budget. With SingleHashDistinct elements, which
+ * can't be ordered, and with both kinds in the same bucket, the set only has
+ * to stay correct.
+ *
+ * TreeifyingHashSet is optional, so it is loaded by name and the tests are
+ * skipped for submissions without it. It needs a constructor that takes the
+ * initial capacity, like HashSet.
+ */
+public class TreeifyingHashSetTest extends SetTest {
+    /** How many times its cost at BASE_SIZE the cost per operation may be at LARGE_SIZE. */
+    private static final double COST_FACTOR = 4;
+    /** Lower bound of the budgets, so timer noise can't fail small storms. */
+    private static final long MIN_BUDGET_NANOS = 50_000_000;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int BASE_SIZE = 10_000;
+    private static final int LARGE_SIZE = 100_000;
+    private static final int RUNS = 3;
+    private static final int UNORDERED_SIZE = 2_000;
+
+    // Shadows the 5 second limit of SetTest, which is too short for the storms
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    @Override
+    protected Set<Integer> getIntegerSet(int minCapacity) {
+        return newSet(minCapacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Set<T> newSet(int capacity) {
+        try {
+            return (Set<T>) Class.forName("TreeifyingHashSet").getDeclaredConstructor(int.class).newInstance(capacity);
+        } catch (ClassNotFoundException e) {
+            Assume.assumeNoException("The submission has no TreeifyingHashSet", e);
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError("TreeifyingHashSet could not be created: " + e, e);
+        }
+    }
+
+    @Test
+    public void comparableCollisionStormHasLogarithmicCost() {
+        storm(BASE_SIZE, Long.MAX_VALUE); // Lets the JIT compile the set first
+        long base = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            base = Math.min(base, storm(BASE_SIZE, Long.MAX_VALUE));
+        }
+        double baseCost = (double) base / operations(BASE_SIZE);
+
+        long budget = Math.max((long) (COST_FACTOR * baseCost * operations(LARGE_SIZE)), MIN_BUDGET_NANOS);
+        double largeCost = (double) storm(LARGE_SIZE, budget) / operations(LARGE_SIZE);
+        System.out.printf("[perf] TreeifyingHashSet, colliding SingleHashComparable: %.2f us per operation "
+                + "at n=%d, %.2f us at n=%d (%.2f times)%n", baseCost / 1e3, BASE_SIZE, largeCost / 1e3,
+                LARGE_SIZE, largeCost / baseCost);
+    }
+
+    @Test
+    public void unorderedCollisionsStayCorrect() {
+        SingleHashDistinct[] colliding = new SingleHashDistinct[UNORDERED_SIZE];
+        for (int i = 0; i < UNORDERED_SIZE; i++) {
+            colliding[i] = new SingleHashDistinct();
+        }
+        Set<SingleHashDistinct> set = newSet(INITIAL_CAPACITY);
+        for (SingleHashDistinct element : colliding) {
+            assertTrue("add is true for a colliding element not in the set", set.add(element));
+        }
+        assertFalse("add is false for a colliding element already in the set", set.add(colliding[0]));
+        assertFalse("contains is false for a colliding element not in the set",
+                set.contains(new SingleHashDistinct()));
+        for (int i = 0; i < UNORDERED_SIZE; i += 2) {
+            assertTrue("remove is true for a colliding element in the set", set.remove(colliding[i]));
+        }
+        for (int i = 0; i < UNORDERED_SIZE; i++) {
+            assertEquals("contains after removing every other colliding element", i % 2 == 1,
+                    set.contains(colliding[i]));
+        }
+        assertEquals("size after removing every other colliding element", UNORDERED_SIZE / 2, set.size());
+    }
+
+    @Test
+    public void mixedCollidingClassesStayCorrect() {
+        // Both classes have hashCode 0, so an unordered element lands in a bucket that may be a tree
+        SingleHashComparable[] comparable = new SingleHashComparable[UNORDERED_SIZE];
+        Set<Object> set = newSet(INITIAL_CAPACITY);
+        for (int i = 0; i < UNORDERED_SIZE; i++) {
+            comparable[i] = new SingleHashComparable();
+            assertTrue("add is true for a colliding element not in the set", set.add(comparable[i]));
+        }
+        SingleHashDistinct unordered = new SingleHashDistinct();
+        assertFalse("contains is false for an unordered element not in the set", set.contains(unordered));
+        assertTrue("add is true for an unordered element not in the set", set.add(unordered));
+        assertTrue("contains is true for the unordered element after adding it", set.contains(unordered));
+        for (SingleHashComparable element : comparable) {
+            assertTrue("contains is true for every Comparable element next to the unordered one",
+                    set.contains(element));
+        }
+        assertTrue("remove is true for the unordered element", set.remove(unordered));
+        for (SingleHashComparable element : comparable) {
+            assertTrue("remove is true for a Comparable element in the set", set.remove(element));
+        }
+        assertEquals("size after removing every element", 0, set.size());
+    }
+
+    /**
+     * Adds size colliding Comparable elements to a new set, then looks them up
+     * and removes them in random order. Fails as soon as the time spent goes
+     * over the budget, and otherwise returns it.
+     */
+    private static long storm(int size, long budget) {
+        SingleHashComparable[] colliding = new SingleHashComparable[size];
+        for (int i = 0; i < size; i++) {
+            colliding[i] = new SingleHashComparable();
+        }
+        SingleHashComparable[] shuffled = colliding.clone();
+        Collections.shuffle(Arrays.asList(shuffled), new Random(size));
+        Set<SingleHashComparable> set = newSet(INITIAL_CAPACITY);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            assertTrue("add is true for a colliding element not in the set", set.add(colliding[i]));
+            checkBudget(start, budget, i, size, "adding");
+        }
+        assertEquals("size after adding " + size + " colliding elements", size, set.size());
+        for (int i = 0; i < size; i++) {
+            assertTrue("contains is true for an added colliding element", set.contains(shuffled[i]));
+            checkBudget(start, budget, i, size, "looking up");
+        }
+        for (int i = 0; i < size; i++) {
+            assertTrue("remove is true for a colliding element in the set", set.remove(shuffled[i]));
+            checkBudget(start, budget, i, size, "removing");
+        }
+        assertEquals("size after removing every colliding element", 0, set.size());
+        return System.nanoTime() - start;
+    }
+
+    private static void checkBudget(long start, long budget, int index, int size, String operation) {
+        // Checked every 1024 operations, and at the end, to keep the clock out of the measurement
+        if ((index & 1023) != 1023 && index != size - 1) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > budget) {
+            fail(String.format("TreeifyingHashSet went over its budget of %.1f ms (%.0f times its cost "
+                    + "at %d elements) with %d colliding SingleHashComparable elements, while %s element %d. "
+                    + "A bucket of Comparable elements should become a balanced tree once it grows long.",
+                    budget / 1e6, COST_FACTOR, BASE_SIZE, size, operation, index + 1));
+        }
+    }
+
+    /** Three operations per element: add, contains and remove. */
+    private static long operations(int size) {
+        return 3L * size;
+    }
+}
@@ -0,0 +1,112 @@
+package benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the primitive IntHashSet next to the boxed HashSet, in
+ * operations per second on a set that already holds size elements. The
+ * lookups hit the set, and every add of a new element is followed by its
+ * remove, so the set keeps its size.
+ *
+ * Both sets are loaded by name and called through method handles, like in
+ * IntSorterBenchmark, and opened with setAccessible in case they are not
+ * public. HashSet's add(T) takes an Object, so its handle boxes
+ * every int, just like code that uses HashSet<Integer> does. The grader runs
+ * this with --benchmark for students who pass the unit tests, at 10^5
+ * elements, and reports every IntHashSet result as a ratio to HashSet. Its
+ * memory per element is measured by IntHashSetTest.
+ *
+ * This directory is not compiled together with the unit tests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IntSetBenchmark {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final MethodType INT_TO_BOOLEAN = MethodType.methodType(boolean.class, int.class);
+
+    @Param({ "HashSet", "IntHashSet" })
+    public String set;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    private MethodHandle add;
+    private MethodHandle remove;
+    private MethodHandle contains;
+    private int[] present;
+    private int[] absent;
+    private int next;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Class<?> setClass = Class.forName(set);
+        Constructor<?> constructor = setClass.getDeclaredConstructor(int.class);
+        constructor.setAccessible(true);
+        Object instance = constructor.newInstance(INITIAL_CAPACITY);
+        // IntHashSet takes an int; the generic HashSet an Object, which asType boxes to
+        Class<?> elementType = set.equals("HashSet") ? Object.class : int.class;
+        add = method(instance, "add", elementType);
+        remove = method(instance, "remove", elementType);
+        contains = method(instance, "contains", elementType);
+
+        // Distinct ints spread over the int range, as in HashSetPerformanceTest
+        present = new int[size];
+        absent = new int[size];
+        for (int i = 0; i < size; i++) {
+            present[i] = i * 0x9E3779B1;
+            absent[i] = (size + i) * 0x9E3779B1;
+            boolean added = (boolean) add.invokeExact(present[i]);
+        }
+    }
+
+    /** Looks up the next element of the set. */
+    @Benchmark
+    public boolean contains() throws Throwable {
+        return (boolean) contains.invokeExact(present[advance()]);
+    }
+
+    /** Adds the next element not in the set, and removes it again. */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean addAndRemove() throws Throwable {
+        int elem = absent[advance()];
+        boolean added = (boolean) add.invokeExact(elem);
+        return (boolean) remove.invokeExact(elem) & added;
+    }
+
+    /** The public method of the set that takes an element, bound to it, as an int to boolean handle. */
+    private static MethodHandle method(Object set, String name, Class<?> elementType)
+            throws ReflectiveOperationException {
+        Method method = set.getClass().getMethod(name, elementType);
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method).bindTo(set).asType(INT_TO_BOOLEAN);
+    }
+
+    private int advance() {
+        int index = next;
+        next = index + 1 == size ? 0 : index + 1;
+        return index;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Reference solution for a set of ints without boxing: open addressing with
+ * linear probing in an int array whose length is a power of two, kept at most
+ * half full. Removal shifts the following elements of the probe sequence back
+ * instead of leaving tombstones, so a set that sees many adds and removes does
+ * not fill up with dead slots.
+ *
+ * A free slot holds 0, so 0 itself is kept in a separate flag.
+ *
+ * This directory is not compiled with the unit tests; copy the file into a
+ * submission's src to run IntHashSetTest against it.
+ */
+public class IntHashSet {
+    private static final int FREE = 0;
+    private static final double MAX_LOAD_FACTOR = 0.5;
+    private static final int MAX_LENGTH = 1 << 30;
+
+    private int[] table;
+    private boolean containsFree;
+    private int size;
+
+    public IntHashSet(int capacity) {
+        int length = 2;
+        while (length < capacity / MAX_LOAD_FACTOR && length < MAX_LENGTH) {
+            length <<= 1;
+        }
+        table = new int[length];
+    }
+
+    public boolean add(int elem) {
+        if (elem == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int index = find(table, elem);
+        if (table[index] == elem) {
+            return false;
+        }
+        table[index] = elem;
+        size++;
+        if (size > MAX_LOAD_FACTOR * table.length && table.length < MAX_LENGTH) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean remove(int elem) {
+        if (elem == FREE) {
+            if (!containsFree) {
+                return false;
+            }
+            containsFree = false;
+            size--;
+            return true;
+        }
+        int gap = find(table, elem);
+        if (table[gap] != elem) {
+            return false;
+        }
+        // Moves back every following element of the run that may fill the gap
+        int mask = table.length - 1;
+        for (int i = (gap + 1) & mask; table[i] != FREE; i = (i + 1) & mask) {
+            int home = slot(table[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                table[gap] = table[i];
+                gap = i;
+            }
+        }
+        table[gap] = FREE;
+        size--;
+        return true;
+    }
+
+    public boolean contains(int elem) {
+        if (elem == FREE) {
+            return containsFree;
+        }
+        return table[find(table, elem)] == elem;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** The index of elem in the table, or of the free slot where it would go. */
+    private static int find(int[] table, int elem) {
+        int mask = table.length - 1;
+        int index = slot(elem, mask);
+        while (table[index] != FREE && table[index] != elem) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * The first slot to probe for elem. Multiplying by the golden ratio spreads
+     * consecutive ints over the table, and the shift mixes in the high bits.
+     */
+    private static int slot(int elem, int mask) {
+        int hash = elem * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void grow() {
+        int[] oldTable = table;
+        table = new int[2 * oldTable.length];
+        for (int elem : oldTable) {
+            if (elem != FREE) {
+                table[find(table, elem)] = elem;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.util.TreeMap;
+
+/**
+ * Reference solution for a hardened hash set: a chained hash table whose long
+ * buckets become balanced trees, the way java.util.HashMap does it. A bucket
+ * of more than TREEIFY_THRESHOLD elements, that are all of the same class and
+ * Comparable, is kept in a red-black tree, so that even a table where every
+ * element collides answers in O(log n). Elements that compare as equal without
+ * being equal share a chain in the tree. A bucket goes back to being a chain
+ * when it shrinks below UNTREEIFY_THRESHOLD elements, or when an element of
+ * another class lands in it.
+ *
+ * This directory is not compiled with the unit tests; copy the file into a
+ * submission's src to run TreeifyingHashSetTest against it.
+ */
+public class TreeifyingHashSet<T> implements Set<T> {
+    /** Chains longer than this become trees, if their elements can be ordered. */
+    static final int TREEIFY_THRESHOLD = 8;
+    /** Trees shorter than this become chains again. */
+    static final int UNTREEIFY_THRESHOLD = 6;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /** Every slot is null, the first Node of a chain, or a Tree. */
+    private Object[] table;
+    private int size;
+
+    public TreeifyingHashSet(int capacity) {
+        table = new Object[Math.max(capacity, 1)];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean add(T elem) {
+        int index = index(elem);
+        if (table[index] instanceof Tree) {
+            Tree<T> tree = (Tree<T>) table[index];
+            if (elem.getClass() == tree.elementClass) {
+                if (!tree.add(elem)) {
+                    return false;
+                }
+                size++;
+                growIfFull();
+                return true;
+            }
+            if (tree.contains(elem)) {
+                return false;
+            }
+            table[index] = tree.toChain();
+        }
+
+        int length = 0;
+        boolean treeifiable = elem instanceof Comparable;
+        for (Node<T> node = (Node<T>) table[index]; node != null; node = node.next) {
+            if (elem.equals(node.element)) {
+                return false;
+            }
+            treeifiable &= node.element.getClass() == elem.getClass();
+            length++;
+        }
+        Node<T> chain = new Node<>(elem, (Node<T>) table[index]);
+        table[index] = treeifiable && length >= TREEIFY_THRESHOLD ? Tree.of(chain) : chain;
+        size++;
+        growIfFull();
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(T elem) {
+        int index = index(elem);
+        if (table[index] instanceof Tree) {
+            Tree<T> tree = (Tree<T>) table[index];
+            if (!tree.remove(elem)) {
+                return false;
+            }
+            if (tree.size < UNTREEIFY_THRESHOLD) {
+                table[index] = tree.toChain();
+            }
+            size--;
+            return true;
+        }
+
+        Node<T> previous = null;
+        for (Node<T> node = (Node<T>) table[index]; node != null; previous = node, node = node.next) {
+            if (elem.equals(node.element)) {
+                if (previous == null) {
+                    table[index] = node.next;
+                } else {
+                    previous.next = node.next;
+                }
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(T elem) {
+        Object bucket = table[index(elem)];
+        if (bucket instanceof Tree) {
+            return ((Tree<T>) bucket).contains(elem);
+        }
+        return Node.find((Node<T>) bucket, elem) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int index(T elem) {
+        return Math.floorMod(elem.hashCode(), table.length);
+    }
+
+    /**
+     * Doubles the table when the load factor goes over MAX_LOAD_FACTOR, adding
+     * the elements again so that their buckets are treeified where needed.
+     */
+    @SuppressWarnings("unchecked")
+    private void growIfFull() {
+        if (size <= MAX_LOAD_FACTOR * table.length) {
+            return;
+        }
+        Object[] oldTable = table;
+        table = new Object[2 * oldTable.length];
+        size = 0;
+        for (Object bucket : oldTable) {
+            Node<T> chain = bucket instanceof Tree ? ((Tree<T>) bucket).toChain() : (Node<T>) bucket;
+            for (Node<T> node = chain; node != null; node = node.next) {
+                add(node.element);
+            }
+        }
+    }
+
+    private static final class Node<T> {
+        final T element;
+        Node<T> next;
+
+        Node(T element, Node<T> next) {
+            this.element = element;
+            this.next = next;
+        }
+
+        /** The node of the chain that holds an element equal to elem, or null. */
+        static <T> Node<T> find(Node<T> chain, T elem) {
+            for (Node<T> node = chain; node != null; node = node.next) {
+                if (elem.equals(node.element)) {
+                    return node;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A bucket of elements of one Comparable class. The TreeMap maps each
+     * element to the chain of elements that compare as equal to it, which is
+     * a single node unless compareTo is inconsistent with equals.
+     */
+    private static final class Tree<T> {
+        final Class<?> elementClass;
+        final TreeMap<T, Node<T>> map = new TreeMap<>();
+        int size;
+
+        private Tree(Class<?> elementClass) {
+            this.elementClass = elementClass;
+        }
+
+        static <T> Tree<T> of(Node<T> chain) {
+            Tree<T> tree = new Tree<>(chain.element.getClass());
+            for (Node<T> node = chain; node != null; node = node.next) {
+                tree.add(node.element);
+            }
+            return tree;
+        }
+
+        boolean add(T elem) {
+            Node<T> equal = map.get(elem);
+            if (Node.find(equal, elem) != null) {
+                return false;
+            }
+            map.put(elem, new Node<>(elem, equal));
+            size++;
+            return true;
+        }
+
+        boolean contains(T elem) {
+            return find(elem) != null;
+        }
+
+        boolean remove(T elem) {
+            Node<T> found = find(elem);
+            if (found == null) {
+                return false;
+            }
+            Node<T> rest = null;
+            for (Node<T> node = map.remove(found.element); node != null; node = node.next) {
+                if (node.element != found.element) {
+                    rest = new Node<>(node.element, rest);
+                }
+            }
+            if (rest != null) {
+                map.put(rest.element, rest);
+            }
+            size--;
+            return true;
+        }
+
+        private Node<T> find(T elem) {
+            if (elem.getClass() != elementClass) {
+                // Can't be compared to the elements, but could still equal one
+                return Node.find(toChain(), elem);
+            }
+            return Node.find(map.get(elem), elem);
+        }
+
+        /** The elements as a chain of new nodes. */
+        Node<T> toChain() {
+            Node<T> chain = null;
+            for (Node<T> equal : map.values()) {
+                for (Node<T> node = equal; node != null; node = node.next) {
+                    chain = new Node<>(node.element, chain);
+                }
+            }
+            return chain;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test class for BalancedTree, a binary search tree that keeps itself
+ * balanced, such as an AVL or a red-black tree. Checks the TreeTest cases that
+ * don't depend on the shape of the tree, and that the height stays within
+ * 2 * log2(n + 1), the bound of a red-black tree, while 10^6 elements are
+ * inserted in ascending and descending order. The height is checked every
+ * time the size reaches a power of two, so a tree that doesn't balance fails
+ * long before it gets slow. Random insertions, which keep even an unbalanced
+ * tree low, check that rotations keep the tree correct.
+ *
+ * BalancedTree is optional, so it is loaded by name and the tests are skipped
+ * for submissions without it. It needs a constructor without parameters, and
+ * the methods of Tree: boolean insert(T), boolean search(T), int size(),
+ * int height(), int leaves() and String toString(), where T extends
+ * Comparable<T>.
+ */
+public class BalancedTreeTest {
+    private static final int LARGE_SIZE = 1_000_000;
+    private static final int RANDOM_SIZE = 200_000;
+    private static final long SEED = 17;
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    private Balanced tree;
+    private int[] elementsInTree;
+    private int[] elementsNotInTree;
+
+    @Before
+    public void setUp() {
+        // The elements of TreeTest
+        tree = new Balanced();
+        elementsInTree = new int[] { 8, 10, 14, 13, 3, 1, 6, 4, 7 };
+        for (int elem : elementsInTree) {
+            tree.insert(elem);
+        }
+        elementsNotInTree = new int[] { 34, -3, -10, 12, 74, 5 };
+    }
+
+    @Test
+    public void searchFindsExactlyTheInsertedElements() {
+        for (int elem : elementsInTree) {
+            assertTrue("search is true for an inserted element", tree.search(elem));
+        }
+        for (int elem : elementsNotInTree) {
+            assertFalse("search is false for an element that was never inserted", tree.search(elem));
+        }
+    }
+
+    @Test
+    public void insertIsFalseForDuplicates() {
+        for (int elem : elementsInTree) {
+            assertFalse("insert is false for an element already in the tree", tree.insert(elem));
+        }
+        assertEquals("size after inserting duplicates", elementsInTree.length, tree.size());
+    }
+
+    @Test
+    public void toStringIsSorted() {
+        int[] sorted = elementsInTree.clone();
+        Arrays.sort(sorted);
+        assertEquals(Arrays.toString(sorted), tree.toString());
+    }
+
+    @Test
+    public void emptyTreeAndSingleRoot() {
+        Balanced empty = new Balanced();
+        assertEquals("size of an empty tree", 0, empty.size());
+        assertEquals("height of an empty tree", 0, empty.height());
+        assertEquals("leaves of an empty tree", 0, empty.leaves());
+        assertEquals("toString of an empty tree", "[]", empty.toString());
+        assertFalse("search in an empty tree", empty.search(1338));
+
+        empty.insert(1338);
+        assertEquals("height of a single root", 0, empty.height());
+        assertEquals("leaves of a single root", 1, empty.leaves());
+        assertEquals("toString of a single root", "[1338]", empty.toString());
+    }
+
+    @Test
+    public void heightIsLogarithmicForAscendingInsertions() {
+        int[] elements = new int[LARGE_SIZE];
+        Arrays.setAll(elements, i -> i);
+        checkLarge(elements, "ascending");
+    }
+
+    @Test
+    public void heightIsLogarithmicForDescendingInsertions() {
+        int[] elements = new int[LARGE_SIZE];
+        Arrays.setAll(elements, i -> LARGE_SIZE - 1 - i);
+        checkLarge(elements, "descending");
+    }
+
+    @Test
+    public void heightIsLogarithmicForRandomInsertions() {
+        // Distinct, as multiplying by an odd constant never maps two indices to the same int
+        int[] elements = new int[RANDOM_SIZE];
+        Random random = new Random(SEED);
+        int offset = random.nextInt();
+        Arrays.setAll(elements, i -> i * 0x9E3779B1 + offset);
+        checkLarge(elements, "random");
+    }
+
+    /**
+     * Inserts the elements, checking the height at every power of two, and
+     * then checks search, size, leaves and toString.
+     */
+    private static void checkLarge(int[] elements, String order) {
+        Balanced tree = new Balanced();
+        long start = System.nanoTime();
+        for (int i = 0; i < elements.length; i++) {
+            assertTrue("insert is true for an element not in the tree", tree.insert(elements[i]));
+            int size = i + 1;
+            if ((size & (size - 1)) == 0 || size == elements.length) {
+                checkHeight(tree, size, order);
+            }
+        }
+        long insertNanos = System.nanoTime() - start;
+        assertEquals("size after inserting every element", elements.length, tree.size());
+
+        start = System.nanoTime();
+        for (int elem : elements) {
+            assertTrue("search is true for an inserted element", tree.search(elem));
+        }
+        long searchNanos = System.nanoTime() - start;
+
+        int leaves = tree.leaves();
+        assertTrue("leaves of a binary tree of n nodes are between 1 and (n + 1) / 2",
+                leaves >= 1 && leaves <= (elements.length + 1) / 2);
+        int[] sorted = elements.clone();
+        Arrays.sort(sorted);
+        assertEquals("toString of the tree", Arrays.toString(sorted), tree.toString());
+
+        System.out.printf("[perf] BalancedTree, n=%d in %s order (height %d): insert %.2f us, search %.2f us "
+                + "per element%n", elements.length, order, tree.height(), insertNanos / 1e3 / elements.length,
+                searchNanos / 1e3 / elements.length);
+    }
+
+    private static void checkHeight(Balanced tree, int size, String order) {
+        int height = tree.height();
+        double bound = 2 * Math.log(size + 1) / Math.log(2);
+        if (height > bound) {
+            fail(String.format("BalancedTree has height %d after %d insertions in %s order, over the %.1f of "
+                    + "2 * log2(n + 1). Does it rebalance after every insert?", height, size, order, bound));
+        }
+    }
+
+    /**
+     * A BalancedTree of Integers, called through method handles so that the
+     * tests compile without it.
+     */
+    private static final class Balanced {
+        private static final MethodType INTEGER_TO_BOOLEAN = MethodType.methodType(boolean.class, Integer.class);
+        private static final MethodType TO_INT = MethodType.methodType(int.class);
+
+        private final Object instance;
+        private final MethodHandle insert;
+        private final MethodHandle search;
+        private final MethodHandle size;
+        private final MethodHandle height;
+        private final MethodHandle leaves;
+
+        Balanced() {
+            Class<?> treeClass;
+            try {
+                treeClass = Class.forName("BalancedTree");
+            } catch (ClassNotFoundException e) {
+                Assume.assumeNoException("The submission has no BalancedTree", e);
+                throw new AssertionError(e);
+            }
+            try {
+                instance = treeClass.getDeclaredConstructor().newInstance();
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                // insert(T) and search(T) take a Comparable after erasure
+                insert = lookup.unreflect(treeClass.getMethod("insert", Comparable.class)).bindTo(instance)
+                        .asType(INTEGER_TO_BOOLEAN);
+                search = lookup.unreflect(treeClass.getMethod("search", Comparable.class)).bindTo(instance)
+                        .asType(INTEGER_TO_BOOLEAN);
+                size = lookup.findVirtual(treeClass, "size", TO_INT).bindTo(instance);
+                height = lookup.findVirtual(treeClass, "height", TO_INT).bindTo(instance);
+                leaves = lookup.findVirtual(treeClass, "leaves", TO_INT).bindTo(instance);
+            } catch (ReflectiveOperationException e) {
+                throw new AssertionError("BalancedTree could not be created: " + e, e);
+            }
+        }
+
+        boolean insert(Integer elem) {
+            try {
+                return (boolean) insert.invokeExact(elem);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        boolean search(Integer elem) {
+            try {
+                return (boolean) search.invokeExact(elem);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        int size() {
+            return call(size);
+        }
+
+        int height() {
+            return call(height);
+        }
+
+        int leaves() {
+            return call(leaves);
+        }
+
+        @Override
+        public String toString() {
+            return instance.toString();
+        }
+
+        private static int call(MethodHandle method) {
+            try {
+                return (int) method.invokeExact();
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        /** Exceptions of BalancedTree itself fail the test as they are. */
+        private static RuntimeException rethrow(Throwable e) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new AssertionError("BalancedTree threw " + e, e);
+        }
+    }
+}
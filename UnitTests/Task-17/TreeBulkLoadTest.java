@@ -0,0 +1,182 @@
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Test class for Tree.fromSorted, which builds a tree from a sorted array in
+ * O(n) by making the middle element the root and building both halves the
+ * same way. The subtrees of every node then differ by at most one in size, so
+ * the height is floor(log2 n) and the number of leaves only depends on n.
+ * Every size up to SMALL_SIZES is checked against that shape, and the tree
+ * has to keep working with insert afterwards.
+ *
+ * At LARGE_SIZE elements, the elements count their comparisons. Building the
+ * tree needs none, while inserting the elements one by one needs about
+ * n * log2(n); fromSorted may make at most n, enough to check that the input
+ * is sorted. The time it takes is printed as a [perf] line, and
+ * benchmark/TreeBuildBenchmark.java compares it to repeated insert.
+ *
+ * fromSorted is optional, so it is looked up by name and the tests are
+ * skipped for submissions without it. It needs to be declared as
+ * public static <T extends Comparable<T>> Tree<T> fromSorted(T[] sorted),
+ * where sorted is in ascending order without duplicates.
+ */
+public class TreeBulkLoadTest {
+    private static final int SMALL_SIZES = 300;
+    private static final int LARGE_SIZE = 1_000_000;
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void emptyArrayGivesAnEmptyTree() {
+        Tree<Integer> tree = fromSorted(new Integer[0]);
+        assertEquals("size of an empty tree", 0, tree.size());
+        assertEquals("height of an empty tree", 0, tree.height());
+        assertEquals("leaves of an empty tree", 0, tree.leaves());
+        assertEquals("toString of an empty tree", "[]", tree.toString());
+    }
+
+    @Test
+    public void treesOfEverySmallSizeAreBalanced() {
+        for (int n = 1; n <= SMALL_SIZES; n++) {
+            Integer[] sorted = range(n);
+            Tree<Integer> tree = fromSorted(sorted);
+            assertEquals("size of a tree built from " + n + " elements", n, tree.size());
+            assertEquals("height of a balanced tree of " + n + " elements", log2(n), tree.height());
+            assertEquals("leaves of a balanced tree of " + n + " elements", balancedLeaves(n), tree.leaves());
+            assertEquals("toString of a tree built from " + n + " elements", Arrays.toString(sorted),
+                    tree.toString());
+            for (Integer elem : sorted) {
+                assertTrue("search is true for an element of the array", tree.search(elem));
+            }
+            assertFalse("search is false below the smallest element", tree.search(-1));
+            assertFalse("search is false above the largest element", tree.search(n));
+        }
+    }
+
+    @Test
+    public void perfectTreeOfSevenElements() {
+        Tree<Integer> tree = fromSorted(new Integer[] { 1, 3, 6, 8, 9, 10, 14 });
+        assertEquals("height of a perfect tree of 7 elements", 2, tree.height());
+        assertEquals("leaves of a perfect tree of 7 elements", 4, tree.leaves());
+        assertEquals("toString of the tree", "[1, 3, 6, 8, 9, 10, 14]", tree.toString());
+    }
+
+    @Test
+    public void insertKeepsWorkingAfterABulkLoad() {
+        Integer[] evens = new Integer[50];
+        Arrays.setAll(evens, i -> 2 * i);
+        Tree<Integer> tree = fromSorted(evens);
+        for (Integer elem : evens) {
+            assertFalse("insert is false for an element of the array", tree.insert(elem));
+        }
+        for (int odd = 1; odd < 100; odd += 2) {
+            assertTrue("insert is true for an element not in the array", tree.insert(odd));
+        }
+        assertEquals("size after inserting the odd elements", 100, tree.size());
+        assertEquals("toString after inserting the odd elements", Arrays.toString(range(100)), tree.toString());
+    }
+
+    @Test
+    public void largeTreeIsBuiltWithoutComparisons() {
+        CountingInteger[] sorted = new CountingInteger[LARGE_SIZE];
+        int[] comparisons = new int[1];
+        Arrays.setAll(sorted, i -> new CountingInteger(i, comparisons));
+
+        long start = System.nanoTime();
+        Tree<CountingInteger> tree = fromSorted(sorted);
+        long buildNanos = System.nanoTime() - start;
+        int buildComparisons = comparisons[0];
+
+        assertTrue(String.format("fromSorted made %d comparisons for %d elements, where inserting them one by "
+                + "one makes about %d. Does it call insert for every element?", buildComparisons, LARGE_SIZE,
+                (long) LARGE_SIZE * log2(LARGE_SIZE)), buildComparisons <= LARGE_SIZE);
+        assertEquals("size of the tree", LARGE_SIZE, tree.size());
+        assertEquals("height of a balanced tree of " + LARGE_SIZE + " elements", log2(LARGE_SIZE), tree.height());
+        assertEquals("leaves of a balanced tree of " + LARGE_SIZE + " elements", balancedLeaves(LARGE_SIZE),
+                tree.leaves());
+        assertTrue("search is true for the last element", tree.search(sorted[LARGE_SIZE - 1]));
+        assertEquals("toString of the tree", Arrays.toString(sorted), tree.toString());
+        System.out.printf("[perf] Tree.fromSorted, n=%d: %.1f ms, %d comparisons%n", LARGE_SIZE,
+                buildNanos / 1e6, buildComparisons);
+    }
+
+    /** floor(log2 n), the height of a balanced tree of n > 0 elements. */
+    private static int log2(int n) {
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
+
+    /**
+     * The leaves of a tree of n elements whose subtrees differ by at most
+     * one in size everywhere. Which side gets the larger half doesn't matter.
+     */
+    private static int balancedLeaves(int n) {
+        if (n <= 1) {
+            return n;
+        }
+        int smaller = (n - 1) / 2;
+        return balancedLeaves(smaller) + balancedLeaves(n - 1 - smaller);
+    }
+
+    private static Integer[] range(int n) {
+        Integer[] elements = new Integer[n];
+        Arrays.setAll(elements, i -> i);
+        return elements;
+    }
+
+    /** Calls Tree.fromSorted, which is looked up by name so that the tests compile without it. */
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> Tree<T> fromSorted(T[] sorted) {
+        Method method;
+        try {
+            // T[] is a Comparable[] after erasure
+            method = Tree.class.getMethod("fromSorted", Comparable[].class);
+        } catch (NoSuchMethodException e) {
+            Assume.assumeNoException("The submission has no Tree.fromSorted", e);
+            throw new AssertionError(e);
+        }
+        try {
+            return (Tree<T>) method.invoke(null, (Object) sorted);
+        } catch (InvocationTargetException e) {
+            // Exceptions of fromSorted itself fail the test as they are
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new AssertionError("Tree.fromSorted threw " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException | ClassCastException | NullPointerException e) {
+            throw new AssertionError("Tree.fromSorted could not be called, is it public and static? " + e, e);
+        }
+    }
+
+    /** An int that counts how many times it is compared. */
+    private static final class CountingInteger implements Comparable<CountingInteger> {
+        private final int value;
+        private final int[] comparisons;
+
+        CountingInteger(int value, int[] comparisons) {
+            this.value = value;
+            this.comparisons = comparisons;
+        }
+
+        @Override
+        public int compareTo(CountingInteger other) {
+            comparisons[0]++;
+            return Integer.compare(value, other.value);
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(value);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Test class for iterating a Tree in order, with its iterator() and with
+ * range(lo, hi), which iterates the elements e with lo <= e < hi. Both should
+ * be lazy: they keep the path down to the next element in a stack, and find
+ * the element after it when next() is called.
+ *
+ * On a balanced tree of LARGE_SIZE elements, the heap an iterator
+ * holds on to is measured after its first element and halfway through. It
+ * may be at most MAX_RETAINED_BYTES, where a copy of the elements takes at
+ * least 4 MB. The elements count their comparisons, and a range may compare
+ * at most COMPARISON_FACTOR times the height plus the elements it returns.
+ * Filtering every element of the tree compares all of them.
+ *
+ * Both are optional, so the tests are skipped for submissions without them.
+ * The iterator needs Tree<T> to implement Iterable<T>, and range needs to be
+ * declared as public Iterator<T> range(T lo, T hi).
+ */
+public class TreeIteratorTest {
+    private static final int LARGE_SIZE = 1_000_000;
+    private static final long MAX_RETAINED_BYTES = 1 << 20;
+    private static final int COMPARISON_FACTOR = 4;
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void iteratorOfAnEmptyTreeHasNoElements() {
+        Iterator<Integer> iterator = iterator(new Tree<Integer>());
+        assertFalse("hasNext of an empty tree", iterator.hasNext());
+        try {
+            iterator.next();
+            fail("next of an empty tree should throw NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void iteratorReturnsTheElementsInOrder() {
+        // The tree of TreeTest
+        int[] elements = { 8, 10, 14, 13, 3, 1, 6, 4, 7 };
+        Tree<Integer> tree = new Tree<>();
+        for (int elem : elements) {
+            tree.insert(elem);
+        }
+        Arrays.sort(elements);
+        assertEquals(toList(elements), toList(iterator(tree)));
+    }
+
+    @Test
+    public void rangeReturnsTheElementsFromLoUpToHi() {
+        // The even numbers 0, 2, ..., 58, inserted in a scattered order
+        Tree<Integer> tree = new Tree<>();
+        for (int i = 0; i < 30; i++) {
+            tree.insert(2 * (i * 7 % 30));
+        }
+        for (int lo = -2; lo <= 62; lo++) {
+            for (int hi = -2; hi <= 62; hi++) {
+                List<Integer> expected = new ArrayList<>();
+                for (int elem = 0; elem < 60; elem += 2) {
+                    if (lo <= elem && elem < hi) {
+                        expected.add(elem);
+                    }
+                }
+                assertEquals("range(" + lo + ", " + hi + ")", expected, toList(range(tree, lo, hi)));
+            }
+        }
+    }
+
+    @Test
+    public void iteratorHoldsOnlyThePathToTheNextElement() {
+        iterator(new Tree<Integer>());
+        Tree<CountingInteger> tree = largeTree(new int[1]);
+        long before = usedMemory();
+        Iterator<CountingInteger> iterator = iterator(tree);
+        assertEquals("first element of the tree", 0, iterator.next().value);
+        long first = usedMemory() - before;
+        for (int i = 1; i < LARGE_SIZE / 2; i++) {
+            assertEquals("next element of the tree", i, iterator.next().value);
+        }
+        long halfway = usedMemory() - before;
+        for (int i = LARGE_SIZE / 2; i < LARGE_SIZE; i++) {
+            assertEquals("next element of the tree", i, iterator.next().value);
+        }
+        assertFalse("hasNext after the last element", iterator.hasNext());
+        Reference.reachabilityFence(iterator);
+        checkRetained("The iterator", first, halfway);
+    }
+
+    @Test
+    public void rangeVisitsOnlyTheSubtreesItNeeds() {
+        range(new Tree<Integer>(), 0, 0);
+        int[] comparisons = new int[1];
+        Tree<CountingInteger> tree = largeTree(comparisons);
+        int height = tree.height();
+
+        int[][] bounds = { { 0, 10 }, { LARGE_SIZE / 2, LARGE_SIZE / 2 + 1000 },
+                { LARGE_SIZE - 10, LARGE_SIZE + 10 }, { -10, 0 } };
+        for (int[] bound : bounds) {
+            int lo = bound[0];
+            int hi = bound[1];
+            int expected = Math.max(0, Math.min(hi, LARGE_SIZE) - Math.max(lo, 0));
+            comparisons[0] = 0;
+            Iterator<CountingInteger> range = range(tree, new CountingInteger(lo, comparisons),
+                    new CountingInteger(hi, comparisons));
+            for (int elem = Math.max(lo, 0); elem < Math.min(hi, LARGE_SIZE); elem++) {
+                assertEquals("next element of the range", elem, range.next().value);
+            }
+            assertFalse("hasNext after the last element of the range", range.hasNext());
+            long budget = (long) COMPARISON_FACTOR * (height + 1 + expected);
+            assertTrue(String.format("range(%d, %d) made %d comparisons for %d elements in a tree of height %d, "
+                    + "over %d. Does it go through elements outside the range?", lo, hi, comparisons[0],
+                    expected, height, budget), comparisons[0] <= budget);
+        }
+
+        long before = usedMemory();
+        Iterator<CountingInteger> range = range(tree, new CountingInteger(LARGE_SIZE / 4, comparisons),
+                new CountingInteger(3 * LARGE_SIZE / 4, comparisons));
+        assertEquals("first element of the range", LARGE_SIZE / 4, range.next().value);
+        long first = usedMemory() - before;
+        for (int i = LARGE_SIZE / 4 + 1; i < LARGE_SIZE / 2; i++) {
+            range.next();
+        }
+        long halfway = usedMemory() - before;
+        Reference.reachabilityFence(range);
+        checkRetained("range", first, halfway);
+    }
+
+    private static void checkRetained(String iterator, long first, long halfway) {
+        System.out.printf("[perf] Tree, n=%d: %s holds %.1f KB after its first element, %.1f KB halfway%n",
+                LARGE_SIZE, iterator, first / 1e3, halfway / 1e3);
+        long retained = Math.max(first, halfway);
+        assertTrue(String.format("%s holds %.1f KB of heap on a tree of %d elements, over %d KB. Does it copy "
+                + "the elements instead of keeping the path to the next one?", iterator, retained / 1e3,
+                LARGE_SIZE, MAX_RETAINED_BYTES >> 10), retained <= MAX_RETAINED_BYTES);
+    }
+
+    /**
+     * A balanced tree of 0 to LARGE_SIZE - 1, counting comparisons in
+     * comparisons. The elements are inserted level by level, the middle one
+     * first, which is quicker than a random order.
+     */
+    private static Tree<CountingInteger> largeTree(int[] comparisons) {
+        Tree<CountingInteger> tree = new Tree<>();
+        ArrayDeque<int[]> ranges = new ArrayDeque<>();
+        ranges.add(new int[] { 0, LARGE_SIZE });
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.poll();
+            if (range[0] < range[1]) {
+                int middle = (range[0] + range[1]) >>> 1;
+                tree.insert(new CountingInteger(middle, comparisons));
+                ranges.add(new int[] { range[0], middle });
+                ranges.add(new int[] { middle + 1, range[1] });
+            }
+        }
+        return tree;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static List<Integer> toList(int[] elements) {
+        List<Integer> list = new ArrayList<>();
+        for (int elem : elements) {
+            list.add(elem);
+        }
+        return list;
+    }
+
+    private static <T> List<T> toList(Iterator<T> iterator) {
+        List<T> list = new ArrayList<>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> Iterator<T> iterator(Tree<T> tree) {
+        Object object = tree;
+        Assume.assumeTrue("Tree doesn't implement Iterable", object instanceof Iterable);
+        return ((Iterable<T>) object).iterator();
+    }
+
+    /** Calls tree.range, which is looked up by name so that the tests compile without it. */
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> Iterator<T> range(Tree<T> tree, T lo, T hi) {
+        Method method;
+        try {
+            // range(T, T) takes Comparables after erasure
+            method = Tree.class.getMethod("range", Comparable.class, Comparable.class);
+        } catch (NoSuchMethodException e) {
+            Assume.assumeNoException("The submission has no Tree.range", e);
+            throw new AssertionError(e);
+        }
+        try {
+            return (Iterator<T>) method.invoke(tree, lo, hi);
+        } catch (InvocationTargetException e) {
+            // Exceptions of range itself fail the test as they are
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new AssertionError("Tree.range threw " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new AssertionError("Tree.range could not be called, does it return an Iterator? " + e, e);
+        }
+    }
+
+    /** An int that counts how many times it is compared. */
+    private static final class CountingInteger implements Comparable<CountingInteger> {
+        final int value;
+        private final int[] comparisons;
+
+        CountingInteger(int value, int[] comparisons) {
+            this.value = value;
+            this.comparisons = comparisons;
+        }
+
+        @Override
+        public int compareTo(CountingInteger other) {
+            comparisons[0]++;
+            return Integer.compare(value, other.value);
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(value);
+        }
+    }
+}
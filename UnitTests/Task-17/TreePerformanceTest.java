@@ -0,0 +1,222 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Scale tests for Tree. Inserts 500 000 elements in random order and checks
+ * search, size, height, leaves and toString on all of them, the last three
+ * against a reference binary search tree built from the same insertion order.
+ *
+ * Ascending and descending insertions make the tree a linked list, which is
+ * what TreeTest expects. Every insert then walks the whole list, so those
+ * tests stop at DEGENERATE_SIZE elements, where that still takes well under
+ * a second. The methods run on those lists in a thread of their own with a
+ * stack of DEEP_STACK_BYTES, which is too small for a stack frame for every
+ * level of the list, so a recursive insert, search, height, leaves or
+ * toString overflows it. Such methods should loop down the tree instead, or
+ * keep the nodes still to visit in a stack or queue of their own.
+ *
+ * The time each operation takes on the random tree is printed as [perf]
+ * lines, which the grader collects for the results.
+ */
+public class TreePerformanceTest {
+    private static final int LARGE_SIZE = 500_000;
+    private static final int DEGENERATE_SIZE = 20_000;
+    /** The stack size of the thread that runs the methods on the lists. */
+    private static final long DEEP_STACK_BYTES = 128 * 1024;
+    private static final long SEED = 17;
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void insertAndSearchInRandomOrder() {
+        List<Integer> elements = shuffledElements();
+        Tree<Integer> tree = new Tree<>();
+        long start = System.nanoTime();
+        for (Integer elem : elements) {
+            assertTrue("insert is true for an element not in the tree", tree.insert(elem));
+        }
+        long insertNanos = System.nanoTime() - start;
+        assertEquals("size after inserting every element", LARGE_SIZE, tree.size());
+
+        start = System.nanoTime();
+        for (Integer elem : elements) {
+            assertTrue("search is true for an inserted element", tree.search(elem));
+            assertFalse("search is false for an element that was never inserted", tree.search(elem + 1));
+        }
+        long searchNanos = System.nanoTime() - start;
+        System.out.printf("[perf] Tree, n=%d in random order: insert %.2f us, search %.2f us per element%n",
+                LARGE_SIZE, insertNanos / 1e3 / LARGE_SIZE, searchNanos / 2e3 / LARGE_SIZE);
+    }
+
+    @Test
+    public void heightLeavesAndToStringInRandomOrder() {
+        List<Integer> elements = shuffledElements();
+        Tree<Integer> tree = new Tree<>();
+        for (Integer elem : elements) {
+            tree.insert(elem);
+        }
+        ReferenceTree reference = new ReferenceTree(elements);
+
+        long[] nanos = new long[3];
+        assertEquals("height of the tree", reference.height, (int) time(tree::height, nanos, 0));
+        assertEquals("leaves of the tree", reference.leaves, (int) time(tree::leaves, nanos, 1));
+        assertEquals("toString of the tree", sortedString(0, 2, LARGE_SIZE), time(tree::toString, nanos, 2));
+        System.out.printf("[perf] Tree, n=%d in random order (height %d): height %.1f ms, leaves %.1f ms, "
+                + "toString %.1f ms%n", LARGE_SIZE, reference.height, nanos[0] / 1e6, nanos[1] / 1e6,
+                nanos[2] / 1e6);
+    }
+
+    @Test
+    public void ascendingInsertionsMakeALongList() {
+        Tree<Integer> tree = new Tree<>();
+        insertDeep(tree, 0, 1);
+        checkList(tree, DEGENERATE_SIZE - 1);
+    }
+
+    @Test
+    public void descendingInsertionsMakeALongList() {
+        Tree<Integer> tree = new Tree<>();
+        insertDeep(tree, DEGENERATE_SIZE - 1, -1);
+        checkList(tree, 0);
+    }
+
+    /** Checks a tree of 0 to DEGENERATE_SIZE - 1 where deepest is at the end of the list. */
+    private static void checkList(Tree<Integer> tree, int deepest) {
+        assertEquals("size after inserting every element", DEGENERATE_SIZE, tree.size());
+        assertTrue("search is true for the deepest element", deep("search", () -> tree.search(deepest)));
+        assertFalse("search is false below the deepest element",
+                deep("search", () -> tree.search(deepest == 0 ? -1 : DEGENERATE_SIZE)));
+        assertEquals("height of a list of " + DEGENERATE_SIZE + " elements", DEGENERATE_SIZE - 1,
+                (int) deep("height", tree::height));
+        assertEquals("leaves of a list", 1, (int) deep("leaves", tree::leaves));
+        assertEquals("toString of a list", sortedString(0, 1, DEGENERATE_SIZE), deep("toString", tree::toString));
+    }
+
+    /** Inserts DEGENERATE_SIZE elements, starting at first and counting by step. */
+    private static void insertDeep(Tree<Integer> tree, int first, int step) {
+        deep("insert", () -> {
+            for (int i = 0; i < DEGENERATE_SIZE; i++) {
+                assertTrue("insert is true for an element not in the tree", tree.insert(first + i * step));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Calls a method of a deep tree in a new thread with a stack of
+     * DEEP_STACK_BYTES, explaining a StackOverflowError.
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> R deep(String method, Supplier<R> call) {
+        Object[] result = new Object[1];
+        Throwable[] thrown = new Throwable[1];
+        Runnable task = () -> {
+            try {
+                result[0] = call.get();
+            } catch (Throwable e) {
+                thrown[0] = e;
+            }
+        };
+        Thread thread = new Thread(null, task, "Tree." + method, DEEP_STACK_BYTES);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError("Interrupted while waiting for Tree." + method, e);
+        }
+        if (thrown[0] instanceof StackOverflowError) {
+            throw new AssertionError(String.format("Tree.%s threw StackOverflowError on a list of up to %d "
+                    + "elements. A recursive method needs a stack frame for every level of the tree; loop down "
+                    + "the tree, or keep the nodes still to visit in a stack or queue of your own, instead.",
+                    method, DEGENERATE_SIZE), thrown[0]);
+        }
+        if (thrown[0] instanceof RuntimeException) {
+            throw (RuntimeException) thrown[0];
+        }
+        if (thrown[0] instanceof Error) {
+            throw (Error) thrown[0];
+        }
+        return (R) result[0];
+    }
+
+    /** Calls call, storing the nanoseconds it took in nanos[index]. */
+    private static <R> R time(Supplier<R> call, long[] nanos, int index) {
+        long start = System.nanoTime();
+        R result = call.get();
+        nanos[index] = System.nanoTime() - start;
+        return result;
+    }
+
+    /** The even numbers below 2 * LARGE_SIZE, so that the odd ones are known not to be in the tree. */
+    private static List<Integer> shuffledElements() {
+        List<Integer> elements = new ArrayList<>(LARGE_SIZE);
+        for (int i = 0; i < LARGE_SIZE; i++) {
+            elements.add(2 * i);
+        }
+        Collections.shuffle(elements, new Random(SEED));
+        return elements;
+    }
+
+    /** The toString of a tree of first, first + step, ... with count elements. */
+    private static String sortedString(int first, int step, int count) {
+        StringBuilder expected = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            expected.append(i == 0 ? "" : ", ").append(first + i * step);
+        }
+        return expected.append("]").toString();
+    }
+
+    /**
+     * The height and leaves of the unbalanced binary search tree that
+     * inserting the elements in order gives, built with arrays and loops.
+     */
+    private static final class ReferenceTree {
+        final int height;
+        final int leaves;
+
+        ReferenceTree(List<Integer> elements) {
+            int n = elements.size();
+            int[] values = new int[n];
+            int[] left = new int[n];
+            int[] right = new int[n];
+            int[] depth = new int[n];
+            int maxDepth = 0;
+            for (int node = 0; node < n; node++) {
+                values[node] = elements.get(node);
+                left[node] = right[node] = -1;
+                if (node == 0) {
+                    continue;
+                }
+                int parent = 0;
+                while (true) {
+                    int[] children = values[node] < values[parent] ? left : right;
+                    if (children[parent] < 0) {
+                        children[parent] = node;
+                        break;
+                    }
+                    parent = children[parent];
+                }
+                depth[node] = depth[parent] + 1;
+                maxDepth = Math.max(maxDepth, depth[node]);
+            }
+            int leafCount = 0;
+            for (int node = 0; node < n; node++) {
+                if (left[node] < 0 && right[node] < 0) {
+                    leafCount++;
+                }
+            }
+            height = maxDepth;
+            leaves = leafCount;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Reference solution for a self-balancing binary search tree: an AVL tree,
+ * where the heights of the two subtrees of every node differ by at most one.
+ * An insert that breaks that is repaired by one or two rotations on the way
+ * back up, which keeps the height below 1.45 * log2(n + 2).
+ *
+ * The tree is only O(log n) deep, so the recursive methods can't overflow the
+ * stack. height() follows TreeTest: 0 for both the empty tree and a single
+ * root.
+ *
+ * This directory is not compiled with the unit tests; copy the file into a
+ * submission's src to run BalancedTreeTest against it.
+ */
+public class BalancedTree<T extends Comparable<T>> {
+    private Node<T> root;
+    private int size;
+
+    private static final class Node<T> {
+        final T elem;
+        Node<T> left;
+        Node<T> right;
+        /** Nodes on the longest path down from here, so 1 for a leaf. */
+        int levels = 1;
+
+        Node(T elem) {
+            this.elem = elem;
+        }
+    }
+
+    public boolean insert(T elem) {
+        int sizeBefore = size;
+        root = insert(root, elem);
+        return size > sizeBefore;
+    }
+
+    private Node<T> insert(Node<T> node, T elem) {
+        if (node == null) {
+            size++;
+            return new Node<>(elem);
+        }
+        int cmp = elem.compareTo(node.elem);
+        if (cmp < 0) {
+            node.left = insert(node.left, elem);
+        } else if (cmp > 0) {
+            node.right = insert(node.right, elem);
+        } else {
+            return node;
+        }
+        return rebalance(node);
+    }
+
+    public boolean search(T elem) {
+        Node<T> node = root;
+        while (node != null) {
+            int cmp = elem.compareTo(node.elem);
+            if (cmp == 0) {
+                return true;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int height() {
+        return root == null ? 0 : root.levels - 1;
+    }
+
+    public int leaves() {
+        return leaves(root);
+    }
+
+    private static int leaves(Node<?> node) {
+        if (node == null) {
+            return 0;
+        }
+        if (node.left == null && node.right == null) {
+            return 1;
+        }
+        return leaves(node.left) + leaves(node.right);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        append(root, builder);
+        return builder.append("]").toString();
+    }
+
+    private static void append(Node<?> node, StringBuilder builder) {
+        if (node == null) {
+            return;
+        }
+        append(node.left, builder);
+        builder.append(builder.length() == 1 ? "" : ", ").append(node.elem);
+        append(node.right, builder);
+    }
+
+    private static int levels(Node<?> node) {
+        return node == null ? 0 : node.levels;
+    }
+
+    private static void update(Node<?> node) {
+        node.levels = 1 + Math.max(levels(node.left), levels(node.right));
+    }
+
+    /** Restores the AVL property at node, whose subtrees are AVL trees. */
+    private static <T> Node<T> rebalance(Node<T> node) {
+        update(node);
+        int balance = levels(node.left) - levels(node.right);
+        if (balance > 1) {
+            if (levels(node.left.left) < levels(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (levels(node.right.right) < levels(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> node) {
+        Node<T> top = node.right;
+        node.right = top.left;
+        top.left = node;
+        update(node);
+        update(top);
+        return top;
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> node) {
+        Node<T> top = node.left;
+        node.left = top.right;
+        top.right = node;
+        update(node);
+        update(top);
+        return top;
+    }
+}
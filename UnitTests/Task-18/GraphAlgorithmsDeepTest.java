@@ -0,0 +1,183 @@
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tests for GraphAlgorithms on deep graphs: a path and a cycle of 10^6
+ * vertices, and a forest of 1000 paths of 1000 vertices each. A recursive
+ * depth-first search needs a stack frame for every vertex on the path it
+ * follows, so it throws StackOverflowError here. hasPath and hasCycle should
+ * keep their own stack or queue instead.
+ *
+ * The algorithms run in a thread of their own with the default thread stack
+ * size, so the result doesn't depend on the stack of the thread JUnit uses.
+ * The memory they allocate, e.g. for the set of visited vertices, is measured
+ * at 10^5 and 10^6 vertices and may grow at most MAX_ALLOCATION_GROWTH times
+ * as much as the number of vertices. Allocating a new visited array for every
+ * component of the forest, for example, fails that. The bytes allocated per
+ * vertex are printed as [perf] lines, which the grader collects for the results.
+ */
+public class GraphAlgorithmsDeepTest {
+    private static final int DEEP_VERTICES = 1_000_000;
+    private static final int SMALL_VERTICES = 100_000;
+    private static final int COMPONENT_SIZE = 1_000;
+    /** How many times the bytes allocated per vertex at SMALL_VERTICES they may be at DEEP_VERTICES. */
+    private static final double MAX_ALLOCATION_GROWTH = 4;
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    @Test
+    public void hasPathIsTrueAlongALongPath() {
+        Graph g = path(DEEP_VERTICES);
+        assertTrue(run("hasPath", "a path", () -> GraphAlgorithms.hasPath(g, 0, DEEP_VERTICES - 1)).result);
+    }
+
+    @Test
+    public void hasPathIsFalseAcrossABrokenLongPath() {
+        Graph g = path(DEEP_VERTICES);
+        g.remove(DEEP_VERTICES - 2, DEEP_VERTICES - 1);
+        assertFalse(run("hasPath", "a path", () -> GraphAlgorithms.hasPath(g, 0, DEEP_VERTICES - 1)).result);
+    }
+
+    @Test
+    public void hasCycleIsFalseForALongPath() {
+        Graph g = path(DEEP_VERTICES);
+        assertFalse(run("hasCycle", "a path", () -> GraphAlgorithms.hasCycle(g)).result);
+    }
+
+    @Test
+    public void hasCycleIsTrueForALargeCycle() {
+        Graph g = path(DEEP_VERTICES);
+        g.add(DEEP_VERTICES - 1, 0, 0);
+        assertTrue(run("hasCycle", "a cycle", () -> GraphAlgorithms.hasCycle(g)).result);
+    }
+
+    @Test
+    public void hasCycleIsFalseForAForestOfManyPaths() {
+        Graph g = forest(DEEP_VERTICES);
+        assertFalse(run("hasCycle", "a forest", () -> GraphAlgorithms.hasCycle(g)).result);
+    }
+
+    @Test
+    public void hasCycleIsTrueWhenOnlyTheLastComponentOfAForestHasOne() {
+        Graph g = forest(DEEP_VERTICES);
+        g.add(DEEP_VERTICES - 1, DEEP_VERTICES - COMPONENT_SIZE, 0);
+        assertTrue(run("hasCycle", "a forest", () -> GraphAlgorithms.hasCycle(g)).result);
+    }
+
+    @Test
+    public void hasPathStaysWithinAComponentOfAForest() {
+        Graph g = forest(DEEP_VERTICES);
+        assertFalse(run("hasPath", "a forest", () -> GraphAlgorithms.hasPath(g, 0, DEEP_VERTICES - 1)).result);
+        assertTrue(run("hasPath", "a forest",
+                () -> GraphAlgorithms.hasPath(g, DEEP_VERTICES - COMPONENT_SIZE, DEEP_VERTICES - 1)).result);
+    }
+
+    @Test
+    public void allocationGrowsLinearlyWithTheVertices() {
+        Assume.assumeTrue("The JVM can't measure the memory a thread allocates",
+                threadMXBean().isThreadAllocatedMemorySupported());
+        checkLinearAllocation("hasPath", "a path", vertices -> {
+            Graph g = path(vertices);
+            return () -> GraphAlgorithms.hasPath(g, 0, vertices - 1);
+        });
+        checkLinearAllocation("hasCycle", "a forest", vertices -> {
+            Graph g = forest(vertices);
+            return () -> GraphAlgorithms.hasCycle(g);
+        });
+    }
+
+    /** Builds the graph for a number of vertices and returns the call to measure on it. */
+    private interface Call {
+        BooleanSupplier on(int vertices);
+    }
+
+    private static void checkLinearAllocation(String algorithm, String shape, Call call) {
+        double small = (double) run(algorithm, shape, call.on(SMALL_VERTICES)).allocatedBytes / SMALL_VERTICES;
+        double deep = (double) run(algorithm, shape, call.on(DEEP_VERTICES)).allocatedBytes / DEEP_VERTICES;
+        System.out.printf("[perf] GraphAlgorithms.%s, %s of %d vertices: %.1f bytes allocated per vertex "
+                + "(%.1f bytes at %d vertices)%n", algorithm, shape, DEEP_VERTICES, deep, small, SMALL_VERTICES);
+        assertTrue(String.format("GraphAlgorithms.%s allocated %.1f bytes per vertex on %s of %d vertices, over "
+                + "%.0f times the %.1f bytes per vertex at %d vertices. Does it allocate a new visited set for "
+                + "every vertex or component?", algorithm, deep, shape, DEEP_VERTICES, MAX_ALLOCATION_GROWTH,
+                small, SMALL_VERTICES), deep <= MAX_ALLOCATION_GROWTH * Math.max(small, 1));
+    }
+
+    /** The result of a call, and the bytes its thread allocated. */
+    private static final class Outcome {
+        boolean result;
+        long allocatedBytes;
+        Throwable thrown;
+    }
+
+    /**
+     * Runs the call in a new thread with the default stack size, and fails
+     * with an explanation if it overflows the stack.
+     */
+    private static Outcome run(String algorithm, String shape, BooleanSupplier call) {
+        Outcome outcome = new Outcome();
+        Runnable task = () -> {
+            com.sun.management.ThreadMXBean threads = threadMXBean();
+            boolean measured = threads.isThreadAllocatedMemorySupported();
+            long before = measured ? threads.getCurrentThreadAllocatedBytes() : 0;
+            try {
+                outcome.result = call.getAsBoolean();
+            } catch (Throwable e) {
+                outcome.thrown = e;
+            }
+            outcome.allocatedBytes = measured ? threads.getCurrentThreadAllocatedBytes() - before : 0;
+        };
+        // A stack size of 0 means the JVM's default
+        Thread thread = new Thread(null, task, "GraphAlgorithms." + algorithm, 0);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError("Interrupted while waiting for GraphAlgorithms." + algorithm, e);
+        }
+        if (outcome.thrown instanceof StackOverflowError) {
+            throw new AssertionError(String.format("GraphAlgorithms.%s threw StackOverflowError on %s of up "
+                    + "to %d vertices. A recursive depth-first search needs a stack frame for every vertex it "
+                    + "goes through; keep the vertices to visit in a stack or queue of your own instead.",
+                    algorithm, shape, DEEP_VERTICES), outcome.thrown);
+        }
+        if (outcome.thrown instanceof RuntimeException) {
+            throw (RuntimeException) outcome.thrown;
+        }
+        if (outcome.thrown instanceof Error) {
+            throw (Error) outcome.thrown;
+        }
+        return outcome;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    /** The path 0 - 1 - ... - (vertices - 1). */
+    private static Graph path(int vertices) {
+        Graph g = new Graph(vertices);
+        for (int v = 0; v + 1 < vertices; v++) {
+            g.add(v, v + 1, 0);
+        }
+        return g;
+    }
+
+    /** Paths of COMPONENT_SIZE consecutive vertices each, not connected to each other. */
+    private static Graph forest(int vertices) {
+        Graph g = new Graph(vertices);
+        for (int v = 0; v + 1 < vertices; v++) {
+            if ((v + 1) % COMPONENT_SIZE != 0) {
+                g.add(v, v + 1, 0);
+            }
+        }
+        return g;
+    }
+}
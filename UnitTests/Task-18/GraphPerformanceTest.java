@@ -0,0 +1,321 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Scale tests for Graph. Builds a graph of 200 000 vertices and 10^6 edges
+ * with add(from, to, cost), and then calls hasEdge, cost, degree, remove and
+ * numEdges on all of it, checking every result.
+ *
+ * The same is done first to a reference graph of HashMaps in the same JVM.
+ * Each kind of operation may cost at most REFERENCE_FACTOR times as much as
+ * it does in the reference, plus MIN_BUDGET_NANOS. That allows for lists or
+ * trees instead of HashMaps, but not for operations that go through every
+ * vertex or edge, which fail within their first few thousand calls. The cost
+ * of each operation and the heap the graph takes are printed as [perf] lines,
+ * which the grader collects for the results.
+ *
+ * An adjacency matrix of 200 000 vertices needs 4 * 10^10 entries, so it runs
+ * out of memory. The grader runs these tests with a limited heap (-Xmx).
+ */
+public class GraphPerformanceTest {
+    /** How many times the reference graph's cost per operation the graph may take. */
+    private static final double REFERENCE_FACTOR = 20;
+    /** Added to every budget, so timer noise, GC pauses and the JIT can't fail a phase. */
+    private static final long MIN_BUDGET_NANOS = 500_000_000;
+    /** Time the warm-up may take, for graphs too slow to warm up fully. */
+    private static final long WARM_UP_NANOS = 1_000_000_000;
+    private static final int WARM_UP_VERTICES = 2_000;
+    private static final int VERTICES = 200_000;
+    /**
+     * Every vertex v has an edge to v + d for each of these d, modulo the
+     * number of vertices. They are all below half of WARM_UP_VERTICES, so no
+     * two of them give the same edge and every vertex gets degree 10.
+     */
+    private static final int[] OFFSETS = { 1, 7, 31, 127, 521 };
+    /** Not in OFFSETS, so v and v + ABSENT_OFFSET are never neighbors. */
+    private static final int ABSENT_OFFSET = 2;
+    /** A prime, so multiplying by it permutes the vertices of both sizes. */
+    private static final long SCATTER = 7919;
+    private static final String[] PHASES = { "add", "hasEdge", "cost", "degree", "remove and numEdges" };
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /**
+     * The operations of a graph under test, so that Graph and the reference
+     * graph are measured by the same code.
+     */
+    private interface Operations {
+        void add(int from, int to, int cost);
+
+        boolean hasEdge(int from, int to);
+
+        int cost(int from, int to);
+
+        int degree(int v);
+
+        void remove(int from, int to);
+
+        int numEdges();
+    }
+
+    @Test
+    public void operationsOnALargeSparseGraphHaveConstantCost() {
+        long warmUpStart = System.nanoTime();
+        for (int round = 0; round < 10 && System.nanoTime() - warmUpStart < WARM_UP_NANOS; round++) {
+            exercise(referenceGraph(WARM_UP_VERTICES), WARM_UP_VERTICES, null);
+            exercise(graph(WARM_UP_VERTICES), WARM_UP_VERTICES, null);
+        }
+
+        // Each graph starts on a collected heap, so that it doesn't pay for collecting the one before
+        usedMemory();
+        double[] referenceCosts = costs(exercise(referenceGraph(VERTICES), VERTICES, null), VERTICES);
+        double[] budgets = new double[PHASES.length];
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            budgets[phase] = REFERENCE_FACTOR * referenceCosts[phase];
+        }
+        double[] costs;
+        usedMemory();
+        try {
+            costs = costs(exercise(graph(VERTICES), VERTICES, budgets), VERTICES);
+        } catch (OutOfMemoryError e) {
+            throw outOfMemory(e);
+        }
+
+        StringBuilder line = new StringBuilder(String.format("[perf] Graph, V=%d, E=%d:", VERTICES, edges(VERTICES)));
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            line.append(String.format("%s %s %.1f ns (%.2f times HashMaps)", phase == 0 ? "" : ",",
+                    PHASES[phase], costs[phase], costs[phase] / referenceCosts[phase]));
+        }
+        System.out.println(line.append(" per operation"));
+    }
+
+    @Test
+    public void largeSparseGraphFitsInMemory() {
+        long before = usedMemory();
+        Operations graph;
+        try {
+            graph = graph(VERTICES);
+            build(graph, VERTICES, null, new long[PHASES.length]);
+        } catch (OutOfMemoryError e) {
+            throw outOfMemory(e);
+        }
+        long bytes = usedMemory() - before;
+        assertEquals("numEdges after adding every edge", edges(VERTICES), graph.numEdges());
+        System.out.printf("[perf] Graph, V=%d, E=%d: %.1f MB of heap, %.1f bytes per edge (heap limit %d MB)%n",
+                VERTICES, edges(VERTICES), bytes / 1e6, (double) bytes / edges(VERTICES),
+                Runtime.getRuntime().maxMemory() >> 20);
+    }
+
+    /**
+     * Builds the graph, checks hasEdge, cost and degree for every vertex and
+     * edge, and removes every edge again, checking numEdges after each.
+     * Returns the nanoseconds each phase took. With budgets, in nanoseconds
+     * per operation of each phase, fails as soon as a phase goes over its
+     * budget for the operations so far.
+     */
+    private static long[] exercise(Operations graph, int vertices, double[] budgets) {
+        long[] nanos = new long[PHASES.length];
+        build(graph, vertices, budgets, nanos);
+        assertEquals("numEdges after adding every edge", edges(vertices), graph.numEdges());
+
+        long start = System.nanoTime();
+        int operations = 0;
+        for (int v = 0; v < vertices; v++) {
+            int from = vertex(v, vertices);
+            for (int d : OFFSETS) {
+                int to = neighbor(v, d, vertices);
+                assertTrue("hasEdge is true for an added edge", graph.hasEdge(from, to));
+                assertTrue("hasEdge is true for an added edge the other way", graph.hasEdge(to, from));
+                operations += 2;
+            }
+            assertFalse("hasEdge is false for vertices that were never connected",
+                    graph.hasEdge(from, neighbor(v, ABSENT_OFFSET, vertices)));
+            checkBudget(start, budgets, 1, v, ++operations, vertices);
+        }
+        nanos[1] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        operations = 0;
+        for (int v = 0; v < vertices; v++) {
+            int from = vertex(v, vertices);
+            for (int d : OFFSETS) {
+                assertEquals("cost of an added edge", cost(v, d), graph.cost(from, neighbor(v, d, vertices)));
+            }
+            operations += OFFSETS.length;
+            checkBudget(start, budgets, 2, v, operations, vertices);
+        }
+        nanos[2] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int v = 0; v < vertices; v++) {
+            assertEquals("degree of a vertex with an edge to and from every offset", 2 * OFFSETS.length,
+                    graph.degree(vertex(v, vertices)));
+            checkBudget(start, budgets, 3, v, v + 1, vertices);
+        }
+        nanos[3] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int expectedEdges = edges(vertices);
+        for (int v = 0; v < vertices; v++) {
+            int from = vertex(v, vertices);
+            for (int d : OFFSETS) {
+                graph.remove(from, neighbor(v, d, vertices));
+                assertEquals("numEdges after removing an edge", --expectedEdges, graph.numEdges());
+            }
+            checkBudget(start, budgets, 4, v, edges(vertices) - expectedEdges, vertices);
+        }
+        assertFalse("hasEdge is false after removing every edge",
+                graph.hasEdge(vertex(0, vertices), neighbor(0, OFFSETS[0], vertices)));
+        nanos[4] = System.nanoTime() - start;
+        return nanos;
+    }
+
+    /** Adds an edge from every vertex v to v + d, for every d in OFFSETS. */
+    private static void build(Operations graph, int vertices, double[] budgets, long[] nanos) {
+        long start = System.nanoTime();
+        for (int v = 0; v < vertices; v++) {
+            int from = vertex(v, vertices);
+            for (int d : OFFSETS) {
+                graph.add(from, neighbor(v, d, vertices), cost(v, d));
+            }
+            checkBudget(start, budgets, 0, v, (v + 1) * OFFSETS.length, vertices);
+        }
+        nanos[0] = System.nanoTime() - start;
+    }
+
+    /** The nanoseconds per operation of each phase. */
+    private static double[] costs(long[] nanos, int vertices) {
+        long[] operations = { edges(vertices), 2L * edges(vertices) + vertices, edges(vertices), vertices,
+                edges(vertices) };
+        double[] costs = new double[PHASES.length];
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            costs[phase] = (double) nanos[phase] / operations[phase];
+        }
+        return costs;
+    }
+
+    /** Fails if the phase has gone over its budget for the operations on vertices up to v. */
+    private static void checkBudget(long start, double[] budgets, int phase, int v, int operations,
+            int vertices) {
+        // Checked every 16 vertices, to keep the clock out of the measurement
+        if (budgets == null || (v & 15) != 15) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        long budget = (long) (budgets[phase] * operations) + MIN_BUDGET_NANOS;
+        if (elapsed > budget) {
+            fail(String.format("Graph took %.1f ms for the first %d %s operations with %d vertices and %d "
+                    + "edges, over its budget of %.1f ms (%.0f times a graph of HashMaps). Does an operation go "
+                    + "through all vertices or edges?", elapsed / 1e6, operations, PHASES[phase], vertices,
+                    edges(vertices), budget / 1e6, REFERENCE_FACTOR));
+        }
+    }
+
+    private static AssertionError outOfMemory(OutOfMemoryError e) {
+        return new AssertionError(String.format("Graph ran out of memory with %d vertices and %d edges, with a "
+                + "heap of at most %d MB. An adjacency matrix needs an entry for every pair of vertices; "
+                + "adjacency lists or maps only need one for every edge.", VERTICES, edges(VERTICES),
+                Runtime.getRuntime().maxMemory() >> 20), e);
+    }
+
+    /** Vertices are scattered, so that neighbors aren't next to each other in arrays. */
+    private static int vertex(int v, int vertices) {
+        return (int) (v * SCATTER % vertices);
+    }
+
+    private static int neighbor(int v, int d, int vertices) {
+        return vertex((v + d) % vertices, vertices);
+    }
+
+    private static int cost(int v, int d) {
+        return (v + d) % 100;
+    }
+
+    private static int edges(int vertices) {
+        return OFFSETS.length * vertices;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Operations graph(int vertices) {
+        Graph graph = new Graph(vertices);
+        return new Operations() {
+            public void add(int from, int to, int cost) {
+                graph.add(from, to, cost);
+            }
+
+            public boolean hasEdge(int from, int to) {
+                return graph.hasEdge(from, to);
+            }
+
+            public int cost(int from, int to) {
+                return graph.cost(from, to);
+            }
+
+            public int degree(int v) {
+                return graph.degree(v);
+            }
+
+            public void remove(int from, int to) {
+                graph.remove(from, to);
+            }
+
+            public int numEdges() {
+                return graph.numEdges();
+            }
+        };
+    }
+
+    /** An undirected graph with a HashMap from neighbor to cost for every vertex. */
+    private static Operations referenceGraph(int vertices) {
+        @SuppressWarnings("unchecked")
+        Map<Integer, Integer>[] adjacency = new Map[vertices];
+        for (int v = 0; v < vertices; v++) {
+            adjacency[v] = new HashMap<>();
+        }
+        int[] numEdges = new int[1];
+        return new Operations() {
+            public void add(int from, int to, int cost) {
+                if (adjacency[from].put(to, cost) == null) {
+                    numEdges[0]++;
+                }
+                adjacency[to].put(from, cost);
+            }
+
+            public boolean hasEdge(int from, int to) {
+                return adjacency[from].containsKey(to);
+            }
+
+            public int cost(int from, int to) {
+                return adjacency[from].getOrDefault(to, -1);
+            }
+
+            public int degree(int v) {
+                return adjacency[v].size();
+            }
+
+            public void remove(int from, int to) {
+                if (adjacency[from].remove(to) != null) {
+                    numEdges[0]--;
+                }
+                adjacency[to].remove(from);
+            }
+
+            public int numEdges() {
+                return numEdges[0];
+            }
+        };
+    }
+}
@@ -0,0 +1,195 @@
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Ignore;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Abstract performance test class for IntSorter implementations. Runs the
+ * general tests as well as large inputs of different shapes, including the
+ * adversarial inputs of InputShape that defeat fixed pivot choices.
+ *
+ * Every input is first sorted at a few smaller sizes, so an implementation
+ * that is quadratic on a shape fails quickly instead of running for minutes.
+ * The time budget is a multiple of how long Arrays.sort takes on random
+ * input of the same size in the same JVM, so the tests adapt to the speed of
+ * the grading machine. Every measurement is printed as a line starting with
+ * [perf], which the grader collects for the results.
+ *
+ * Implementing test classes must override the getIntSorter method.
+ */
+@Ignore
+public abstract class IntSorterPerformanceTest extends IntSorterTest {
+    /** How many times as long as Arrays.sort on random input a sort may take. */
+    private static final double BUDGET_FACTOR = 10;
+    /** Lower bound of the budget, so timer noise can't fail small inputs. */
+    private static final long MIN_BUDGET_NANOS = 25_000_000;
+    private static final int[] PROBE_SIZES = { 10_000, 100_000, 1_000_000 };
+    private static final int LARGE_SIZE = 10_000_000;
+
+    /** Nanoseconds Arrays.sort needs for random input, by size. Shared by all classes. */
+    private static final Map<Integer, Long> baselines = new HashMap<>();
+    private static final Set<Class<?>> warmedUp = new HashSet<>();
+
+    @Rule
+    public Timeout timeout = Timeout.seconds(30);
+
+    /**
+     * Lets the JIT compile both the student's sort and Arrays.sort before
+     * anything is timed, once per implementation.
+     */
+    @Before
+    public void warmUp() {
+        synchronized (warmedUp) {
+            if (!warmedUp.add(getClass())) {
+                return;
+            }
+        }
+        int[] input = InputShape.RANDOM.generate(10_000);
+        for (int round = 0; round < 30; round++) {
+            sorter.sort(input.clone());
+            Arrays.sort(input.clone());
+        }
+    }
+
+    @Test
+    public void testRandomInputPerformance() {
+        assertFastEnough(InputShape.RANDOM, PROBE_SIZES);
+    }
+
+    @Test
+    public void testSortedInputPerformance() {
+        assertFastEnough(InputShape.SORTED, PROBE_SIZES);
+    }
+
+    @Test
+    public void testReverseSortedInputPerformance() {
+        assertFastEnough(InputShape.REVERSED, PROBE_SIZES);
+    }
+
+    @Test
+    public void testOrganPipeInputPerformance() {
+        assertFastEnough(InputShape.ORGAN_PIPE, PROBE_SIZES);
+    }
+
+    @Test
+    public void testMedianOfThreeKillerInputPerformance() {
+        assertFastEnough(InputShape.MEDIAN_OF_THREE_KILLER, PROBE_SIZES);
+    }
+
+    @Test
+    public void testFewUniqueInputPerformance() {
+        assertFastEnough(InputShape.FEW_UNIQUE, PROBE_SIZES);
+    }
+
+    @Test
+    public void testAllEqualInputPerformance() {
+        assertFastEnough(InputShape.ALL_EQUAL, PROBE_SIZES);
+    }
+
+    @Test
+    public void testTenMillionRandomElementsPerformance() {
+        assertFastEnough(InputShape.RANDOM, new int[] { 100_000, LARGE_SIZE });
+    }
+
+    /**
+     * Sorts the shape at each size in turn, checks the result and fails as soon
+     * as a size goes over budget.
+     */
+    private void assertFastEnough(InputShape shape, int[] sizes) {
+        String name = sorter.getClass().getSimpleName();
+        for (int size : sizes) {
+            int[] input = shape.generate(size);
+            long[] expected = fingerprint(input);
+
+            long baseline = baseline(size);
+            long budget = Math.max((long) (BUDGET_FACTOR * baseline), MIN_BUDGET_NANOS);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < runs(size); run++) {
+                int[] array = input.clone();
+                long start = System.nanoTime();
+                try {
+                    sorter.sort(array);
+                } catch (StackOverflowError e) {
+                    fail(name + " overflowed the stack on " + shape + " input of "
+                            + size + " elements; the recursion depth grows with the array size");
+                }
+                long elapsed = System.nanoTime() - start;
+                best = Math.min(best, elapsed);
+                assertSorted(name, shape, expected, array);
+                if (elapsed > 4 * budget) {
+                    break; // Far too slow to be noise, don't spend more time on it
+                }
+            }
+
+            System.out.printf("[perf] %s, %s, n=%d: %.1f ms (Arrays.sort on random input: %.1f ms, "
+                    + "ratio %.2f)%n", name, shape, size, best / 1e6, baseline / 1e6,
+                    (double) best / baseline);
+            assertTrue(String.format("%s took %.1f ms to sort %s input of %d elements, over the budget "
+                    + "of %.1f ms (%.0f times Arrays.sort on random input). It probably degrades to "
+                    + "quadratic time on this input shape.", name, best / 1e6, shape, size,
+                    budget / 1e6, BUDGET_FACTOR), best <= budget);
+        }
+    }
+
+    /**
+     * Checks the order and, through the fingerprint, that the elements are the
+     * ones that went in. Cheaper than sorting a copy for comparison.
+     */
+    private static void assertSorted(String name, InputShape shape, long[] expected, int[] array) {
+        for (int i = 1; i < array.length; i++) {
+            if (array[i - 1] > array[i]) {
+                fail(name + " did not sort " + shape + " input of " + array.length
+                        + " elements: " + array[i - 1] + " comes before " + array[i]
+                        + " at index " + (i - 1));
+            }
+        }
+        assertArrayEquals(name + " changed the elements of " + shape + " input of "
+                + array.length + " elements while sorting it", expected, fingerprint(array));
+    }
+
+    /** Sums of a few functions of the elements, which don't depend on their order. */
+    private static long[] fingerprint(int[] array) {
+        long sum = 0;
+        long sumOfSquares = 0;
+        long sumOfHashes = 0;
+        for (int x : array) {
+            sum += x;
+            sumOfSquares += (long) x * x;
+            long hash = x * 0x9E3779B97F4A7C15L;
+            sumOfHashes += hash ^ (hash >>> 29);
+        }
+        return new long[] { sum, sumOfSquares, sumOfHashes };
+    }
+
+    /** Best of a few runs for the small sizes, where a single run is too noisy. */
+    private static int runs(int size) {
+        return size <= 100_000 ? 3 : 1;
+    }
+
+    private static long baseline(int size) {
+        synchronized (baselines) {
+            Long baseline = baselines.get(size);
+            if (baseline == null) {
+                int[] input = InputShape.RANDOM.generate(size);
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < runs(size); run++) {
+                    int[] array = input.clone();
+                    long start = System.nanoTime();
+                    Arrays.sort(array);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                baseline = best;
+                baselines.put(size, baseline);
+            }
+            return baseline;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test class for ParallelQuicksort. Based on the general tests, plus a scaling
+ * test that sorts 10^7 elements in fork/join pools with parallelism 1, 2, 4
+ * and the number of processors.
+ *
+ * ParallelQuicksort is optional, so it is loaded by name and the tests are
+ * skipped for submissions without it. It should fork its tasks in the pool of
+ * the calling thread, as RecursiveAction.invoke and invokeAll do, rather than
+ * in ForkJoinPool.commonPool(). Otherwise every level runs in the common pool.
+ *
+ * The speedups are printed as [perf] lines but not asserted, since the grader
+ * tests several students at once on the same cores.
+ */
+public class ParallelQuicksortTest extends IntSorterTest {
+    private static final int SCALING_SIZE = 10_000_000;
+    private static final int RUNS = 2;
+
+    @Rule
+    public Timeout timeout = Timeout.seconds(120);
+
+    @Override
+    protected IntSorter getIntSorter() {
+        try {
+            return (IntSorter) Class.forName("ParallelQuicksort").getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            Assume.assumeNoException("The submission has no ParallelQuicksort", e);
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError("ParallelQuicksort could not be created: " + e, e);
+        }
+    }
+
+    @Test
+    public void testParallelScaling() throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int[] input = InputShape.RANDOM.generate(SCALING_SIZE);
+        int[] expected = input.clone();
+        Arrays.sort(expected);
+
+        // Lets the JIT compile the sort before the first level is timed
+        int[] warmUpInput = InputShape.RANDOM.generate(100_000);
+        for (int round = 0; round < 20; round++) {
+            sorter.sort(warmUpInput.clone());
+        }
+
+        long sequential = 0;
+        for (int parallelism : new TreeSet<>(Arrays.asList(1, 2, 4, processors))) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < RUNS; run++) {
+                    int[] array = input.clone();
+                    long start = System.nanoTime();
+                    pool.submit(() -> sorter.sort(array)).get();
+                    best = Math.min(best, System.nanoTime() - start);
+                    assertArrayEquals("ParallelQuicksort did not sort " + SCALING_SIZE
+                            + " random elements with parallelism " + parallelism, expected, array);
+                }
+                if (parallelism == 1) {
+                    sequential = best;
+                }
+                System.out.printf("[perf] ParallelQuicksort, random, n=%d, parallelism %d of %d "
+                        + "processors: %.1f ms (speedup %.2f)%n", SCALING_SIZE, parallelism,
+                        processors, best / 1e6, (double) sequential / best);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+}
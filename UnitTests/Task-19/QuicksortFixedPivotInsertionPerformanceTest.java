@@ -0,0 +1,9 @@
+/**
+ * Performance test class for QuicksortFixedPivotInsertion. Based on the general performance tests.
+ */
+public class QuicksortFixedPivotInsertionPerformanceTest extends IntSorterPerformanceTest {
+    @Override
+    protected IntSorter getIntSorter() {
+        return new QuicksortFixedPivotInsertion(); // Return the specific implementation
+    }
+}
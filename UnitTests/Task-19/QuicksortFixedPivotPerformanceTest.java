@@ -0,0 +1,9 @@
+/**
+ * Performance test class for QuicksortFixedPivot. Based on the general performance tests.
+ */
+public class QuicksortFixedPivotPerformanceTest extends IntSorterPerformanceTest {
+    @Override
+    protected IntSorter getIntSorter() {
+        return new QuicksortFixedPivot(); // Return the specific implementation
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * Performance test class for QuicksortRandomPivotInsertion. Based on the general performance tests.
+ */
+public class QuicksortRandomPivotInsertionPerformanceTest extends IntSorterPerformanceTest {
+    @Override
+    protected IntSorter getIntSorter() {
+        return new QuicksortRandomPivotInsertion(); // Return the specific implementation
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * Performance test class for QuicksortRandomPivot. Based on the general performance tests.
+ */
+public class QuicksortRandomPivotPerformanceTest extends IntSorterPerformanceTest {
+    @Override
+    protected IntSorter getIntSorter() {
+        return new QuicksortRandomPivot(); // Return the specific implementation
+    }
+}
@@ -0,0 +1,117 @@
+package benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the quicksort variants with an insertion sort cutoff next
+ * to their plain siblings, e.g. QuicksortFixedPivotInsertion next to
+ * QuicksortFixedPivot, in sorts per second.
+ *
+ * With cutoff=plain the plain variant is benchmarked, and with cutoff=default
+ * the insertion variant as submitted. A number sets the cutoff of the
+ * insertion variant, if it exposes one: a setter of it or a superclass with a
+ * single int parameter and "cutoff" or "threshold" in its name, or else a
+ * constructor that takes a single int. Neither has to be public, but the
+ * setter has to return nothing or the sorter, so that helpers such as
+ * belowCutoff(int) are left alone. For variants without one, these runs fail
+ * in setup and JMH moves on to the next.
+ *
+ * The grader compares every cutoff with cutoff=plain and flags the ones that
+ * are slower. It is compiled and run like IntSorterBenchmark, and opens
+ * classes that are not public the same way.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class InsertionCutoffBenchmark {
+    /** The cutoff that benchmarks the plain variant instead. */
+    public static final String PLAIN = "plain";
+    /** The cutoff that benchmarks the insertion variant as it is. */
+    public static final String DEFAULT = "default";
+
+    @Param({ "QuicksortFixedPivot", "QuicksortRandomPivot" })
+    public String variant;
+
+    @Param({ PLAIN, DEFAULT, "8", "16", "32", "64" })
+    public String cutoff;
+
+    @Param({ "1000", "100000" })
+    public int size;
+
+    @Param({ "random" })
+    public String distribution;
+
+    private MethodHandle sorter;
+    private int[] input;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        Object instance;
+        if (cutoff.equals(PLAIN)) {
+            instance = IntSorterBenchmark.newInstance(Class.forName(variant));
+        } else if (cutoff.equals(DEFAULT)) {
+            instance = IntSorterBenchmark.newInstance(Class.forName(variant + "Insertion"));
+        } else {
+            instance = withCutoff(Class.forName(variant + "Insertion"), Integer.parseInt(cutoff));
+        }
+        sorter = IntSorterBenchmark.sortOf(instance);
+        input = IntSorterBenchmark.generate(distribution, size);
+    }
+
+    @Benchmark
+    public int[] sort() throws Throwable {
+        int[] array = input.clone();
+        sorter.invokeExact(array);
+        return array;
+    }
+
+    /**
+     * Creates an instance of the sorter class with the given cutoff, through
+     * a cutoff setter or else a constructor.
+     */
+    private static Object withCutoff(Class<?> sorterClass, int cutoff)
+            throws ReflectiveOperationException {
+        for (Class<?> c = sorterClass; c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                String name = method.getName().toLowerCase();
+                Class<?> returnType = method.getReturnType();
+                if (!Modifier.isStatic(method.getModifiers()) && method.getParameterCount() == 1
+                        && method.getParameterTypes()[0] == int.class
+                        && (returnType == void.class || returnType == c)
+                        && (name.contains("cutoff") || name.contains("threshold"))) {
+                    Object instance = IntSorterBenchmark.newInstance(sorterClass);
+                    method.setAccessible(true);
+                    method.invoke(instance, cutoff);
+                    return instance;
+                }
+            }
+        }
+        try {
+            Constructor<?> constructor = sorterClass.getDeclaredConstructor(int.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(cutoff);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException(
+                    sorterClass.getName() + " does not expose a configurable cutoff");
+        }
+    }
+}
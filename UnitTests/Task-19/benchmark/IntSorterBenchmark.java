@@ -0,0 +1,129 @@
+package benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of IntSorter implementations, in sorts per second, next to
+ * Arrays.sort as the reference.
+ *
+ * The implementations are loaded by name, so any class implementing IntSorter
+ * can be benchmarked, e.g. with -p implementation=Arrays.sort,MySorter. JMH
+ * does not allow benchmarks in the default package, where the students'
+ * classes are, so they are called through a method handle instead. Those
+ * classes are often package-private, so they are opened up with
+ * setAccessible rather than looked up as public. The
+ * grader runs this with --benchmark for students who pass the unit tests, in
+ * a short mode with fewer sizes and distributions. To run it by hand, with the
+ * student's compiled classes in the current directory and this directory
+ * copied next to them:
+ *
+ *   javac -cp .:jmh-core-1.37.jar:jmh-generator-annprocess-1.37.jar:jopt-simple-5.0.4.jar:commons-math3-3.6.1.jar
+ *         -processor org.openjdk.jmh.generators.BenchmarkProcessor -d benchmark_classes benchmark/IntSorterBenchmark.java
+ *   java -cp benchmark_classes:.:(the same jars) org.openjdk.jmh.Main IntSorterBenchmark
+ *
+ * This directory is not compiled together with the unit tests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IntSorterBenchmark {
+    /** The implementation name that benchmarks Arrays.sort. */
+    public static final String REFERENCE = "Arrays.sort";
+
+    @Param({ REFERENCE, "QuicksortFixedPivot", "QuicksortFixedPivotInsertion",
+            "QuicksortRandomPivot", "QuicksortRandomPivotInsertion" })
+    public String implementation;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    @Param({ "random", "sorted", "reversed", "fewUnique" })
+    public String distribution;
+
+    private static final MethodType SORT = MethodType.methodType(void.class, int[].class);
+
+    private MethodHandle sorter;
+    private int[] input;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        if (implementation.equals(REFERENCE)) {
+            sorter = MethodHandles.publicLookup().findStatic(Arrays.class, "sort", SORT);
+        } else {
+            sorter = sortOf(newInstance(Class.forName(implementation)));
+        }
+        input = generate(distribution, size);
+    }
+
+    /** Creates an instance of a sorter class, public or not, with its no-argument constructor. */
+    static Object newInstance(Class<?> sorterClass) throws ReflectiveOperationException {
+        Constructor<?> constructor = sorterClass.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+    }
+
+    /** The sort(int[]) method of the sorter, bound to it, whether its class is public or not. */
+    static MethodHandle sortOf(Object sorter) throws ReflectiveOperationException {
+        Method sort = sorter.getClass().getMethod("sort", int[].class);
+        sort.setAccessible(true);
+        return MethodHandles.lookup().unreflect(sort).bindTo(sorter).asType(SORT);
+    }
+
+    /**
+     * Sorts a fresh copy of the input. The copy is part of what is measured,
+     * but it takes linear time and is the same for every implementation.
+     */
+    @Benchmark
+    public int[] sort() throws Throwable {
+        int[] array = input.clone();
+        sorter.invokeExact(array);
+        return array;
+    }
+
+    /** The input of the given distribution, the same for every implementation. */
+    static int[] generate(String distribution, int size) {
+        int[] array = new int[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            switch (distribution) {
+                case "random":
+                    array[i] = random.nextInt();
+                    break;
+                case "sorted":
+                    array[i] = i;
+                    break;
+                case "reversed":
+                    array[i] = size - i;
+                    break;
+                case "fewUnique":
+                    array[i] = random.nextInt(10);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown distribution: " + distribution);
+            }
+        }
+        return array;
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reference solution for the parallel quicksort: random pivot, three-way
+ * partitioning and insertion sort for short subarrays. Subarrays of at least
+ * SEQUENTIAL_THRESHOLD elements are split into fork/join tasks whose halves
+ * are sorted in parallel.
+ *
+ * The sort runs in the fork/join pool of the calling thread if there is one,
+ * and in the common pool otherwise, so that ParallelQuicksortTest can choose
+ * the parallelism. This directory is not compiled with the unit tests; copy
+ * the file into a submission's src to run the tests against it.
+ */
+public class ParallelQuicksort implements IntSorter {
+    /** Subarrays shorter than this are sorted by the task that partitioned them. */
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+    private static final int INSERTION_CUTOFF = 16;
+
+    @Override
+    public void sort(int[] v) {
+        if (v == null) {
+            throw new NullPointerException();
+        }
+        new SortTask(v, 0, v.length - 1).invoke();
+    }
+
+    private static final class SortTask extends RecursiveAction {
+        private final int[] v;
+        private final int lo;
+        private final int hi;
+
+        SortTask(int[] v, int lo, int hi) {
+            this.v = v;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo < SEQUENTIAL_THRESHOLD) {
+                sequentialSort(v, lo, hi);
+                return;
+            }
+            int[] bounds = partition(v, lo, hi);
+            invokeAll(new SortTask(v, lo, bounds[0] - 1), new SortTask(v, bounds[1] + 1, hi));
+        }
+    }
+
+    /**
+     * Sorts v[lo..hi], recursing into the shorter side only so the stack depth
+     * stays logarithmic.
+     */
+    private static void sequentialSort(int[] v, int lo, int hi) {
+        while (hi - lo >= INSERTION_CUTOFF) {
+            int[] bounds = partition(v, lo, hi);
+            if (bounds[0] - lo < hi - bounds[1]) {
+                sequentialSort(v, lo, bounds[0] - 1);
+                lo = bounds[1] + 1;
+            } else {
+                sequentialSort(v, bounds[1] + 1, hi);
+                hi = bounds[0] - 1;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            int x = v[i];
+            int j = i - 1;
+            while (j >= lo && v[j] > x) {
+                v[j + 1] = v[j];
+                j--;
+            }
+            v[j + 1] = x;
+        }
+    }
+
+    /**
+     * Partitions v[lo..hi] around a random pivot into smaller, equal and
+     * larger elements, and returns the first and last index of the equal ones.
+     */
+    private static int[] partition(int[] v, int lo, int hi) {
+        int pivot = v[ThreadLocalRandom.current().nextInt(lo, hi + 1)];
+        int lt = lo;
+        int i = lo;
+        int gt = hi;
+        while (i <= gt) {
+            if (v[i] < pivot) {
+                swap(v, lt++, i++);
+            } else if (v[i] > pivot) {
+                swap(v, i, gt--);
+            } else {
+                i++;
+            }
+        }
+        return new int[] { lt, gt };
+    }
+
+    private static void swap(int[] v, int i, int j) {
+        int temp = v[i];
+        v[i] = v[j];
+        v[j] = temp;
+    }
+}
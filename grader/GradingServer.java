@@ -0,0 +1,298 @@
+package grader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.internal.TextListener;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * Long-lived grading service used by AutoGrader.py (--daemon).
+ *
+ * The JVM, javac and JUnit are loaded once and then reused for every
+ * student, instead of starting three fresh JVMs per submission. Requests
+ * are read from stdin, one per line, as tab-separated fields:
+ *
+ * <pre>
+ * cwd TAB javac TAB arg TAB arg ...
+ * cwd TAB java TAB [jvm flags] TAB -cp TAB classpath TAB org.junit.runner.JUnitCore TAB TestClass ...
+ * cwd TAB java TAB [jvm flags] TAB -cp TAB classpath TAB grader.LinkCheck TAB arg ...
+ * </pre>
+ *
+ * i.e. the same command lines AutoGrader.py would otherwise hand to
+ * subprocess, prefixed with the directory they would run in. Every request
+ * is answered with four lines on stdout: the exit code, then stdout and
+ * stderr of the command with backslashes and line breaks escaped, and last
+ * the number of threads the command left running.
+ *
+ * Sources are compiled in-process via javax.tools.JavaCompiler, and the
+ * test classes of every student run in their own URLClassLoader so that
+ * static state never leaks between submissions. Timeouts are enforced by
+ * the Python side, which kills and restarts the service when a student's
+ * code hangs (or calls System.exit).
+ *
+ * JUnit's Timeout rule gives up on a test thread without stopping it, and
+ * nothing else here can stop a thread that loops forever. So the tests run
+ * in a ThreadGroup of their own, and any thread of it still alive shortly
+ * after they end is counted. The Python side then restarts the service, so
+ * that the next student's timed tests don't share the CPU with it.
+ */
+public class GradingServer {
+    private static final String JUNIT_RUNNER = "org.junit.runner.JUnitCore";
+    private static final String LINK_CHECK = "grader.LinkCheck";
+    /** How long the threads of a test run get to end after JUnit is done. */
+    private static final long LEFTOVER_GRACE_MILLIS = 1000;
+
+    private final PrintStream protocol;
+    private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    /** Threads the last JUnit run left running, reported with its result. */
+    private int leftoverThreads;
+    private int testRuns;
+
+    private GradingServer(PrintStream protocol) {
+        this.protocol = protocol;
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Keep the real stdin/stdout for the protocol only. Student code sees
+        // an empty stdin (like subprocess.DEVNULL), and anything printed
+        // outside of a request ends up on stderr.
+        InputStream requests = System.in;
+        PrintStream protocol = new PrintStream(
+                new FileOutputStream(FileDescriptor.out), true, "UTF-8");
+        System.setIn(new ByteArrayInputStream(new byte[0]));
+        System.setOut(System.err);
+
+        GradingServer server = new GradingServer(protocol);
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(requests, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            server.handle(line.split("\t", -1));
+        }
+    }
+
+    private void handle(String[] request) {
+        File cwd = new File(request[0]);
+        List<String> command = Arrays.asList(request).subList(1, request.length);
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        int exitCode;
+        leftoverThreads = 0;
+        try {
+            if (command.isEmpty()) {
+                throw new IllegalArgumentException("Empty command");
+            } else if (command.get(0).equals("javac")) {
+                exitCode = javac(cwd, command.subList(1, command.size()), stdout, stderr);
+            } else if (command.get(0).equals("java")) {
+                exitCode = java(cwd, command.subList(1, command.size()), stdout, stderr);
+            } else {
+                throw new IllegalArgumentException("Unsupported command: " + command.get(0));
+            }
+        } catch (Throwable t) {
+            t.printStackTrace(new PrintStream(stderr, true));
+            exitCode = 1;
+        }
+        protocol.println(exitCode);
+        protocol.println(escape(stripPrefix(stdout, cwd)));
+        protocol.println(escape(stripPrefix(stderr, cwd)));
+        protocol.println(leftoverThreads);
+        protocol.flush();
+    }
+
+    /**
+     * Compiles like the javac command line tool would, but in this JVM.
+     * Relative paths are resolved against cwd.
+     */
+    private int javac(File cwd, List<String> args, ByteArrayOutputStream stdout,
+            ByteArrayOutputStream stderr) {
+        List<String> resolved = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.startsWith("-J")) {
+                // JVM flags only make sense for a fresh javac process
+                continue;
+            } else if (arg.equals("-d") || arg.equals("-cp") || arg.equals("-classpath")) {
+                resolved.add(arg);
+                resolved.add(resolvePath(cwd, args.get(++i)));
+            } else if (arg.startsWith("-")) {
+                resolved.add(arg);
+            } else {
+                resolved.add(resolve(cwd, arg));
+            }
+        }
+        return compiler.run(null, stdout, stderr, resolved.toArray(new String[0]));
+    }
+
+    /**
+     * Runs one of the main classes AutoGrader.py starts with java, in this JVM.
+     */
+    private int java(File cwd, List<String> args, ByteArrayOutputStream stdout,
+            ByteArrayOutputStream stderr) throws IOException {
+        String classpath = "";
+        String mainClass = null;
+        List<String> mainArgs = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (mainClass != null) {
+                mainArgs.add(arg);
+            } else if (arg.equals("-cp") || arg.equals("-classpath")) {
+                classpath = resolvePath(cwd, args.get(++i));
+            } else if (!arg.startsWith("-")) {
+                mainClass = arg;
+            }
+        }
+
+        if (JUNIT_RUNNER.equals(mainClass)) {
+            return junit(classpath, mainArgs, stdout, stderr);
+        } else if (LINK_CHECK.equals(mainClass)) {
+            for (int i = 0; i < mainArgs.size(); i++) {
+                mainArgs.set(i, resolve(cwd, mainArgs.get(i)));
+            }
+            return LinkCheck.run(mainArgs.toArray(new String[0]), new PrintStream(stdout, true, "UTF-8"));
+        }
+        throw new IllegalArgumentException("Only " + JUNIT_RUNNER + " and " + LINK_CHECK + " can be run");
+    }
+
+    /**
+     * Runs JUnitCore on the given test classes, loading the classpath in an
+     * isolated class loader. The output mimics the JUnitCore command line.
+     * The tests run in a thread group of their own, whose threads still alive
+     * after LEFTOVER_GRACE_MILLIS are counted in leftoverThreads.
+     */
+    private int junit(String classpath, List<String> testClassNames, ByteArrayOutputStream stdout,
+            ByteArrayOutputStream stderr) throws IOException {
+        String[] entries = classpath.split(File.pathSeparator);
+        URL[] urls = new URL[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            urls[i] = new File(entries[i]).toURI().toURL();
+        }
+
+        PrintStream out = new PrintStream(stdout, true, "UTF-8");
+        PrintStream err = new PrintStream(stderr, true, "UTF-8");
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        ThreadGroup group = new ThreadGroup("junit-" + ++testRuns);
+        try (URLClassLoader loader = new URLClassLoader(urls, GradingServer.class.getClassLoader())) {
+            System.setOut(out);
+            System.setErr(err);
+
+            out.println("JUnit version " + junit.runner.Version.id());
+            List<Failure> missingClasses = new ArrayList<>();
+            List<Class<?>> testClasses = new ArrayList<>();
+            for (String name : testClassNames) {
+                try {
+                    testClasses.add(Class.forName(name, false, loader));
+                } catch (ClassNotFoundException | LinkageError e) {
+                    out.println("Could not find class: " + name);
+                    missingClasses.add(new Failure(
+                            Description.createSuiteDescription("initializationError"), e));
+                }
+            }
+
+            JUnitCore core = new JUnitCore();
+            core.addListener(new TextListener(out));
+            Result[] result = new Result[1];
+            Thread runner = new Thread(group,
+                    () -> result[0] = core.run(testClasses.toArray(new Class<?>[0])), group.getName());
+            runner.setContextClassLoader(loader);
+            runner.start();
+            try {
+                runner.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            leftoverThreads = awaitThreads(group);
+            return result[0] != null && result[0].wasSuccessful() && missingClasses.isEmpty() ? 0 : 1;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+    }
+
+    /**
+     * Waits up to LEFTOVER_GRACE_MILLIS for the threads of the group to end,
+     * and returns how many are still running. Workers of the common
+     * ForkJoinPool outlive the tests that started them, idle, so they are
+     * only counted while the pool still has tasks to run.
+     */
+    private static int awaitThreads(ThreadGroup group) {
+        long deadline = System.nanoTime() + LEFTOVER_GRACE_MILLIS * 1_000_000;
+        while (true) {
+            int running = 0;
+            Thread[] threads = new Thread[group.activeCount() + 16];
+            int count = group.enumerate(threads, true);
+            for (int i = 0; i < count; i++) {
+                if (threads[i].isAlive() && !(threads[i] instanceof ForkJoinWorkerThread
+                        && ((ForkJoinWorkerThread) threads[i]).getPool() == ForkJoinPool.commonPool())) {
+                    running++;
+                }
+            }
+            if (!ForkJoinPool.commonPool().isQuiescent()) {
+                running += Math.max(1, ForkJoinPool.commonPool().getActiveThreadCount());
+            }
+            if (running == 0 || System.nanoTime() - deadline > 0) {
+                return running;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return running;
+            }
+        }
+    }
+
+    private static String resolve(File cwd, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? path : new File(cwd, path).getPath();
+    }
+
+    private static String resolvePath(File cwd, String paths) {
+        String[] entries = paths.split(File.pathSeparator);
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = resolve(cwd, entries[i]);
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /**
+     * Makes diagnostics look like they came from a process started in cwd,
+     * i.e. "Graph.java:12: error" rather than an absolute path.
+     */
+    private static String stripPrefix(ByteArrayOutputStream output, File cwd) {
+        String text = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        return text.replace(cwd.getPath() + File.separator, "");
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\r", "\\r").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,543 @@
+package grader;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Bytecode-level link check used by AutoGrader.py (--precompile-tests).
+ *
+ * The UnitTests of a task are compiled once, and the resulting class files
+ * are reused for every student. That is only sound if every class, field
+ * and method the test bytecode refers to exists in the student's classes
+ * with exactly the same descriptor, or javac would have failed outright.
+ * This class reads the constant pool of every precompiled test class and
+ * resolves each symbolic reference against the student's classes, without
+ * initializing them.
+ *
+ * A matching descriptor is not enough on its own. With an extra overload
+ * of a method the tests call, javac may pick a different one, and the
+ * values of static final constants are copied into the tests. A checked
+ * exception added to a throws clause would make the tests fail to compile,
+ * but links all the same. So when given the classes of the student the tests
+ * were compiled against, every method the tests call must also have the same
+ * overloads as there, each throwing the same exceptions, and every constant
+ * must have the same value.
+ *
+ * Usage: java grader.LinkCheck testClassesDir studentClassesDir [compiledAgainstDir]
+ *
+ * Exits with 0 when everything links, and 1 (listing the missing members)
+ * when the tests have to be recompiled for this student.
+ */
+public class LinkCheck {
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+
+    public static void main(String[] args) throws IOException {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Runs the check and prints any problems to out.
+     *
+     * @return The exit code, 0 if the test classes link.
+     */
+    public static int run(String[] args, PrintStream out) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            out.println("Usage: java grader.LinkCheck testClassesDir studentClassesDir [compiledAgainstDir]");
+            return 2;
+        }
+        File compiledAgainst = args.length == 3 ? new File(args[2]) : null;
+        List<String> problems = check(new File(args[0]), new File(args[1]), compiledAgainst);
+        for (String problem : problems) {
+            out.println(problem);
+        }
+        return problems.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * @param compiledAgainst The student classes the tests were compiled
+     * against, to compare overloads and constants with, or null to only
+     * check that the references link.
+     * @return A description of every reference that does not link, empty if
+     * the test classes can be used as they are.
+     */
+    public static List<String> check(File testClasses, File studentClasses, File compiledAgainst)
+            throws IOException {
+        Set<String> problems = new LinkedHashSet<>();
+        File[] classFiles = testClasses.listFiles((dir, name) -> name.endsWith(".class"));
+        if (classFiles == null) {
+            problems.add("No test classes in " + testClasses);
+            return new ArrayList<>(problems);
+        }
+        Set<String> testClassNames = new HashSet<>();
+        for (File classFile : classFiles) {
+            String name = classFile.getName();
+            testClassNames.add(name.substring(0, name.length() - ".class".length()));
+        }
+
+        URL[] urls = { studentClasses.toURI().toURL(), testClasses.toURI().toURL() };
+        File compiledAgainstDir = compiledAgainst != null ? compiledAgainst : studentClasses;
+        URL[] compiledAgainstUrls = { compiledAgainstDir.toURI().toURL() };
+        try (URLClassLoader loader = new URLClassLoader(urls, LinkCheck.class.getClassLoader());
+                URLClassLoader compiledAgainstLoader = new URLClassLoader(compiledAgainstUrls,
+                        LinkCheck.class.getClassLoader())) {
+            for (File classFile : classFiles) {
+                for (Reference reference : readReferences(classFile)) {
+                    String problem = resolve(reference, loader, testClassNames);
+                    if (problem == null && compiledAgainst != null) {
+                        problem = compareOverloads(reference, loader, compiledAgainstLoader, testClassNames);
+                    }
+                    if (problem != null) {
+                        problems.add(problem);
+                    }
+                }
+            }
+        }
+        if (compiledAgainst != null && problems.isEmpty()) {
+            compareConstants(compiledAgainst, compiledAgainst, studentClasses, problems);
+        }
+        return new ArrayList<>(problems);
+    }
+
+    /**
+     * @return null if the reference links, otherwise a description of why
+     * it does not.
+     */
+    private static String resolve(Reference reference, ClassLoader loader, Set<String> testClassNames) {
+        String owner = elementType(reference.owner);
+        if (owner == null || testClassNames.contains(owner)) {
+            return null;
+        }
+        if (reference.owner.startsWith("[")) {
+            // Members of array types (clone, length) always exist
+            reference = new Reference(reference.source, CONSTANT_CLASS, owner, null, null);
+        }
+        Class<?> ownerClass;
+        try {
+            ownerClass = Class.forName(owner.replace('/', '.'), false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return reference.source + " needs class " + owner + ", which could not be loaded";
+        }
+        if (ownerClass.getClassLoader() != loader || reference.name == null) {
+            // JDK and JUnit classes are the same for every student
+            return null;
+        }
+        if (reference.kind == CONSTANT_METHODREF && ownerClass.isInterface()
+                || reference.kind == CONSTANT_INTERFACE_METHODREF && !ownerClass.isInterface()) {
+            return reference.source + " was compiled against " + owner
+                    + (ownerClass.isInterface() ? " as a class" : " as an interface");
+        }
+
+        boolean found;
+        if (reference.kind == CONSTANT_FIELDREF) {
+            found = hasField(ownerClass, reference.name, reference.descriptor);
+        } else if (reference.name.equals("<init>")) {
+            found = hasConstructor(ownerClass, reference.descriptor);
+        } else {
+            found = hasMethod(ownerClass, reference.name, reference.descriptor);
+        }
+        return found ? null
+                : reference.source + " needs " + owner + "." + reference.name + reference.descriptor
+                        + ", which the student's " + owner + " does not provide";
+    }
+
+    /**
+     * @return null if the student's class declares the same overloads of the
+     * method the reference calls as the class the tests were compiled
+     * against, with the same throws clauses, so that javac would have picked
+     * the same one and accepted the tests, otherwise a description of the
+     * difference.
+     */
+    private static String compareOverloads(Reference reference, ClassLoader loader,
+            ClassLoader compiledAgainstLoader, Set<String> testClassNames) {
+        if (reference.kind == CONSTANT_CLASS || reference.kind == CONSTANT_FIELDREF
+                || reference.owner.startsWith("[") || testClassNames.contains(reference.owner)) {
+            return null;
+        }
+        String owner = reference.owner.replace('/', '.');
+        try {
+            Class<?> ownerClass = Class.forName(owner, false, loader);
+            if (ownerClass.getClassLoader() != loader) {
+                return null;
+            }
+            Class<?> compiledAgainstClass = Class.forName(owner, false, compiledAgainstLoader);
+            if (overloads(ownerClass, reference.name).equals(overloads(compiledAgainstClass, reference.name))) {
+                return null;
+            }
+        } catch (ClassNotFoundException | LinkageError e) {
+            // Not comparable, so assume the worst
+        }
+        return reference.source + " calls " + reference.owner + "." + reference.name
+                + ", whose overloads or their throws clauses differ from those the tests were compiled against";
+    }
+
+    /**
+     * @return The descriptors of the methods named name that are visible in
+     * owner, or of its constructors for "<init>", each followed by the
+     * exceptions it declares. Bridge methods are left out, as javac never
+     * picks them.
+     */
+    private static Set<String> overloads(Class<?> owner, String name) {
+        Set<String> descriptors = new TreeSet<>();
+        if (name.equals("<init>")) {
+            for (Constructor<?> constructor : owner.getDeclaredConstructors()) {
+                if (!Modifier.isPrivate(constructor.getModifiers()) && !constructor.isSynthetic()) {
+                    descriptors.add(descriptor(constructor.getParameterTypes(), void.class)
+                            + throwsClause(constructor.getExceptionTypes()));
+                }
+            }
+            return descriptors;
+        }
+        for (Class<?> type : hierarchy(owner)) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (method.getName().equals(name) && !Modifier.isPrivate(method.getModifiers())
+                        && !method.isSynthetic()) {
+                    descriptors.add(descriptor(method.getParameterTypes(), method.getReturnType())
+                            + throwsClause(method.getExceptionTypes()));
+                }
+            }
+        }
+        return descriptors;
+    }
+
+    /** The exceptions a method or constructor declares, sorted by name. */
+    private static String throwsClause(Class<?>[] exceptionTypes) {
+        Set<String> names = new TreeSet<>();
+        for (Class<?> exceptionType : exceptionTypes) {
+            names.add(exceptionType.getName());
+        }
+        return names.isEmpty() ? "" : " throws " + String.join(", ", names);
+    }
+
+    /**
+     * Adds a problem for every constant of the classes in dir, below the
+     * classes the tests were compiled against, that the student's class of
+     * the same name lacks or gives another value. javac copies the values of
+     * the constants the tests read, so those have to be the same.
+     */
+    private static void compareConstants(File compiledAgainst, File dir, File studentClasses,
+            Set<String> problems) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                compareConstants(compiledAgainst, file, studentClasses, problems);
+                continue;
+            } else if (!file.getName().endsWith(".class")) {
+                continue;
+            }
+            String path = compiledAgainst.toPath().relativize(file.toPath()).toString();
+            Map<String, Object> expected;
+            try (InputStream in = new FileInputStream(file)) {
+                expected = readConstants(in, file.getName());
+            }
+            if (expected.isEmpty()) {
+                continue;
+            }
+            File studentFile = new File(studentClasses, path);
+            Map<String, Object> actual = new HashMap<>();
+            if (studentFile.isFile()) {
+                try (InputStream in = new FileInputStream(studentFile)) {
+                    actual = readConstants(in, studentFile.getName());
+                }
+            }
+            String className = path.substring(0, path.length() - ".class".length())
+                    .replace(File.separatorChar, '/');
+            for (Map.Entry<String, Object> constant : expected.entrySet()) {
+                if (!Objects.equals(constant.getValue(), actual.get(constant.getKey()))) {
+                    problems.add("The tests may use the constant " + className + "." + constant.getKey()
+                            + " = " + constant.getValue() + ", which the student's " + className
+                            + (actual.containsKey(constant.getKey()) ? " gives another value"
+                                    : " does not declare"));
+                }
+            }
+        }
+    }
+
+    private static boolean hasField(Class<?> owner, String name, String descriptor) {
+        for (Class<?> type : hierarchy(owner)) {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.getName().equals(name) && descriptor(field.getType()).equals(descriptor)) {
+                    return !Modifier.isPrivate(field.getModifiers());
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasConstructor(Class<?> owner, String descriptor) {
+        for (Constructor<?> constructor : owner.getDeclaredConstructors()) {
+            if (descriptor(constructor.getParameterTypes(), void.class).equals(descriptor)) {
+                return !Modifier.isPrivate(constructor.getModifiers());
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasMethod(Class<?> owner, String name, String descriptor) {
+        for (Class<?> type : hierarchy(owner)) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (method.getName().equals(name)
+                        && descriptor(method.getParameterTypes(), method.getReturnType()).equals(descriptor)) {
+                    return !Modifier.isPrivate(method.getModifiers());
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return owner followed by all of its superclasses and superinterfaces,
+     * in the order the JVM searches them (Object included for interfaces).
+     */
+    private static List<Class<?>> hierarchy(Class<?> owner) {
+        List<Class<?>> types = new ArrayList<>();
+        Deque<Class<?>> interfaces = new ArrayDeque<>();
+        for (Class<?> type = owner; type != null; type = type.getSuperclass()) {
+            types.add(type);
+            for (Class<?> implemented : type.getInterfaces()) {
+                interfaces.add(implemented);
+            }
+        }
+        while (!interfaces.isEmpty()) {
+            Class<?> type = interfaces.poll();
+            if (!types.contains(type)) {
+                types.add(type);
+                for (Class<?> extended : type.getInterfaces()) {
+                    interfaces.add(extended);
+                }
+            }
+        }
+        if (owner.isInterface()) {
+            types.add(Object.class);
+        }
+        return types;
+    }
+
+    private static String descriptor(Class<?>[] parameters, Class<?> returnType) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Class<?> parameter : parameters) {
+            descriptor.append(descriptor(parameter));
+        }
+        return descriptor.append(')').append(descriptor(returnType)).toString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isArray()) {
+            return type.getName().replace('.', '/');
+        } else if (!type.isPrimitive()) {
+            return "L" + type.getName().replace('.', '/') + ";";
+        } else if (type == void.class) {
+            return "V";
+        } else if (type == boolean.class) {
+            return "Z";
+        } else if (type == long.class) {
+            return "J";
+        }
+        return String.valueOf(Character.toUpperCase(type.getName().charAt(0)));
+    }
+
+    /**
+     * @return The class named by a CONSTANT_Class entry, with array
+     * dimensions stripped, or null for arrays of primitives.
+     */
+    private static String elementType(String className) {
+        if (!className.startsWith("[")) {
+            return className;
+        }
+        String element = className.replaceFirst("^\\[+", "");
+        return element.startsWith("L") ? element.substring(1, element.length() - 1) : null;
+    }
+
+    private static List<Reference> readReferences(File classFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(classFile))) {
+            ConstantPool pool = new ConstantPool(in, classFile.getName());
+            int count = pool.tags.length;
+            int[] tags = pool.tags;
+            String[] utf8 = pool.utf8;
+            int[] first = pool.first;
+            int[] second = pool.second;
+
+            String source = classFile.getName().replace(".class", "");
+            List<Reference> references = new ArrayList<>();
+            for (int i = 1; i < count; i++) {
+                if (tags[i] == CONSTANT_CLASS) {
+                    references.add(new Reference(source, CONSTANT_CLASS, utf8[first[i]], null, null));
+                } else if (tags[i] == CONSTANT_FIELDREF || tags[i] == CONSTANT_METHODREF
+                        || tags[i] == CONSTANT_INTERFACE_METHODREF) {
+                    String owner = utf8[first[first[i]]];
+                    int nameAndType = second[i];
+                    references.add(new Reference(source, tags[i], owner,
+                            utf8[first[nameAndType]], utf8[second[nameAndType]]));
+                }
+            }
+            return references;
+        }
+    }
+
+    /**
+     * @return The values of the non-private static final fields of a class
+     * file that have a ConstantValue attribute, i.e. the constants javac
+     * copies into the classes that read them, by field name.
+     */
+    private static Map<String, Object> readConstants(InputStream classFile, String source) throws IOException {
+        DataInputStream in = new DataInputStream(classFile);
+        ConstantPool pool = new ConstantPool(in, source);
+        in.readUnsignedShort(); // access flags
+        in.readUnsignedShort(); // this class
+        in.readUnsignedShort(); // super class
+        in.skipBytes(2 * in.readUnsignedShort()); // interfaces
+        Map<String, Object> constants = new HashMap<>();
+        int fields = in.readUnsignedShort();
+        for (int i = 0; i < fields; i++) {
+            int access = in.readUnsignedShort();
+            String name = pool.utf8[in.readUnsignedShort()];
+            in.readUnsignedShort(); // descriptor
+            int attributes = in.readUnsignedShort();
+            for (int j = 0; j < attributes; j++) {
+                String attribute = pool.utf8[in.readUnsignedShort()];
+                int length = in.readInt();
+                boolean constant = (access & (ACC_STATIC | ACC_FINAL)) == (ACC_STATIC | ACC_FINAL)
+                        && (access & ACC_PRIVATE) == 0;
+                if (attribute.equals("ConstantValue") && constant) {
+                    int index = in.readUnsignedShort();
+                    constants.put(name, pool.tags[index] == CONSTANT_STRING ? pool.utf8[pool.first[index]]
+                            : pool.values[index]);
+                } else {
+                    in.skipBytes(length);
+                }
+            }
+        }
+        return constants;
+    }
+
+    /**
+     * The constant pool of a class file, with the entries as the class file
+     * format stores them: first and second are the indexes an entry refers
+     * to, and values the numbers of the numeric entries.
+     */
+    private static class ConstantPool {
+        final int[] tags;
+        final String[] utf8;
+        final int[] first;
+        final int[] second;
+        final Object[] values;
+
+        /** Reads the header and constant pool of a class file. */
+        ConstantPool(DataInputStream in, String source) throws IOException {
+            in.readInt(); // magic
+            in.readUnsignedShort(); // minor version
+            in.readUnsignedShort(); // major version
+            int count = in.readUnsignedShort();
+            tags = new int[count];
+            utf8 = new String[count];
+            first = new int[count];
+            second = new int[count];
+            values = new Object[count];
+            for (int i = 1; i < count; i++) {
+                tags[i] = in.readUnsignedByte();
+                switch (tags[i]) {
+                    case CONSTANT_UTF8:
+                        utf8[i] = in.readUTF();
+                        break;
+                    case CONSTANT_INTEGER:
+                        values[i] = in.readInt();
+                        break;
+                    case CONSTANT_FLOAT:
+                        values[i] = in.readFloat();
+                        break;
+                    case CONSTANT_LONG:
+                        values[i] = in.readLong();
+                        i++; // takes up two entries
+                        break;
+                    case CONSTANT_DOUBLE:
+                        values[i] = in.readDouble();
+                        i++; // takes up two entries
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        first[i] = in.readUnsignedShort();
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        in.readUnsignedByte();
+                        first[i] = in.readUnsignedShort();
+                        break;
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        first[i] = in.readUnsignedShort();
+                        second[i] = in.readUnsignedShort();
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tags[i] + " in " + source);
+                }
+            }
+        }
+    }
+
+    /**
+     * A symbolic reference from a test class: a class, or a member of one.
+     */
+    private static class Reference {
+        final String source;
+        final int kind;
+        final String owner;
+        final String name;
+        final String descriptor;
+
+        Reference(String source, int kind, String owner, String name, String descriptor) {
+            this.source = source;
+            this.kind = kind;
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+"""
+Stand-in for the GitHub Enterprise REST API, for testing issue publishing offline.
+
+Start it with
+    python stubs/github_stub.py --port 8001 --writes-per-minute 20 --error-rate 0.1
+and point the grader at it in .env:
+    GITHUB_API_URL=http://localhost:8001/api/v3
+    GITHUB_TOKEN=stub
+
+POST /repos/<owner>/<repo>/issues creates an issue and answers with the usual
+X-RateLimit-* headers. Requests beyond --limit per --window seconds get the
+primary rate limit error. Writes beyond --writes-per-minute, or writes that
+overlap another write, get a secondary rate limit error with a Retry-After
+header. A fraction --error-rate of the writes fails with 502.
+When stopped, the stub prints what it received, including duplicated issues.
+"""
+
+import argparse
+import json
+import random
+import signal
+import sys
+import threading
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+state_lock = threading.Lock()
+stats = {"created": 0, "rate_limited": 0, "secondary_limited": 0, "errors": 0}
+issues = {}  # (repo, title, body) -> times created
+window = {"start": time.time(), "used": 0}
+recent_writes = []  # Times of the writes in the last minute
+writes_in_flight = [0]
+
+
+class GitHubHandler(BaseHTTPRequestHandler):
+    def do_GET(self):
+        parts = self.repo_path()
+        if parts is None or len(parts) != 2:
+            self.send_json(404, {"message": "Not Found"})
+            return
+        if not self.take_request():
+            return
+        owner, name = parts
+        self.send_json(200, repository(self.server, owner, name))
+
+    def do_POST(self):
+        body = self.rfile.read(int(self.headers.get("Content-Length", 0)))
+        parts = self.repo_path()
+        if parts is None or len(parts) != 3 or parts[2] != "issues":
+            self.send_json(404, {"message": "Not Found"})
+            return
+        if not self.take_request():
+            return
+        owner, name = parts[0], parts[1]
+        try:
+            payload = json.loads(body)
+        except ValueError:
+            self.send_json(400, {"message": "Problems parsing JSON"})
+            return
+
+        now = time.time()
+        with state_lock:
+            while recent_writes and recent_writes[0] < now - 60:
+                recent_writes.pop(0)
+            secondary_limited = (
+                len(recent_writes) >= self.server.writes_per_minute or writes_in_flight[0] > 0
+            )
+            if secondary_limited:
+                stats["secondary_limited"] += 1
+            else:
+                recent_writes.append(now)
+                writes_in_flight[0] += 1
+        if secondary_limited:
+            self.send_json(
+                403,
+                {"message": "You have exceeded a secondary rate limit. Please wait a few minutes before you try again."},
+                {"Retry-After": f"{self.server.retry_after:g}"},
+            )
+            return
+
+        try:
+            time.sleep(self.server.latency)
+            if random.random() < self.server.error_rate:
+                with state_lock:
+                    stats["errors"] += 1
+                self.send_json(502, {"message": "Server Error"})
+                return
+            with state_lock:
+                stats["created"] += 1
+                number = stats["created"]
+                key = (f"{owner}/{name}", payload.get("title"), payload.get("body"))
+                issues[key] = issues.get(key, 0) + 1
+            base = f"http://{self.headers.get('Host')}{self.server.api_prefix}"
+            self.send_json(
+                201,
+                {
+                    "id": number,
+                    "number": number,
+                    "title": payload.get("title"),
+                    "body": payload.get("body"),
+                    "state": "open",
+                    "url": f"{base}/repos/{owner}/{name}/issues/{number}",
+                    "html_url": f"http://{self.headers.get('Host')}/{owner}/{name}/issues/{number}",
+                    "repository_url": f"{base}/repos/{owner}/{name}",
+                },
+            )
+        finally:
+            with state_lock:
+                writes_in_flight[0] -= 1
+
+    # The path below the API prefix, split at slashes, for /repos/... requests
+    def repo_path(self):
+        path = self.path.split("?", 1)[0]
+        if path.startswith(self.server.api_prefix):
+            path = path[len(self.server.api_prefix):]
+        parts = [part for part in path.split("/") if part]
+        if not parts or parts[0] != "repos":
+            return None
+        return parts[1:]
+
+    # Counts the request against the primary rate limit, answering it if exhausted
+    def take_request(self):
+        with state_lock:
+            if time.time() >= window["start"] + self.server.window:
+                window["start"] = time.time()
+                window["used"] = 0
+            exhausted = window["used"] >= self.server.limit
+            if exhausted:
+                stats["rate_limited"] += 1
+            else:
+                window["used"] += 1
+        if exhausted:
+            self.send_json(403, {"message": "API rate limit exceeded"})
+        return not exhausted
+
+    def send_json(self, status, payload, headers=None):
+        data = json.dumps(payload).encode("utf-8")
+        with state_lock:
+            remaining = max(0, self.server.limit - window["used"])
+            reset = int(window["start"] + self.server.window)
+        self.send_response(status)
+        self.send_header("Content-Type", "application/json; charset=utf-8")
+        self.send_header("Content-Length", str(len(data)))
+        self.send_header("X-RateLimit-Limit", str(self.server.limit))
+        self.send_header("X-RateLimit-Remaining", str(remaining))
+        self.send_header("X-RateLimit-Used", str(self.server.limit - remaining))
+        self.send_header("X-RateLimit-Reset", str(reset))
+        for name, value in (headers or {}).items():
+            self.send_header(name, value)
+        self.end_headers()
+        self.wfile.write(data)
+
+    def log_message(self, format, *args):
+        pass
+
+
+def repository(server, owner, name):
+    base = f"http://127.0.0.1:{server.server_port}{server.api_prefix}"
+    return {
+        "id": abs(hash((owner, name))),
+        "name": name,
+        "full_name": f"{owner}/{name}",
+        "owner": {"login": owner},
+        "url": f"{base}/repos/{owner}/{name}",
+        "has_issues": True,
+    }
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.strip().splitlines()[0])
+    parser.add_argument("--port", type=int, default=8001)
+    parser.add_argument("--api-prefix", default="/api/v3", help="path the API is served under")
+    parser.add_argument("--latency", type=float, default=0.2, help="seconds per issue")
+    parser.add_argument("--limit", type=int, default=5000, help="requests per window")
+    parser.add_argument("--window", type=float, default=3600, help="seconds per rate limit window")
+    parser.add_argument("--writes-per-minute", type=int, default=80, help="secondary rate limit")
+    parser.add_argument("--retry-after", type=float, default=60, help="Retry-After of a secondary limit")
+    parser.add_argument("--error-rate", type=float, default=0.0, help="fraction answered with 502")
+    options = parser.parse_args()
+
+    server = ThreadingHTTPServer(("127.0.0.1", options.port), GitHubHandler)
+    server.api_prefix = options.api_prefix.rstrip("/")
+    server.latency = options.latency
+    server.limit = options.limit
+    server.window = options.window
+    server.writes_per_minute = options.writes_per_minute
+    server.retry_after = options.retry_after
+    server.error_rate = options.error_rate
+    print(
+        f"GitHub stub listening on http://127.0.0.1:{options.port}{server.api_prefix}",
+        flush=True,
+    )
+    signal.signal(signal.SIGTERM, lambda signum, frame: sys.exit(0))
+    try:
+        server.serve_forever()
+    except KeyboardInterrupt:
+        pass
+    finally:
+        duplicates = sum(count - 1 for count in issues.values())
+        print(
+            f"{stats['created']} issues created in {len({key[0] for key in issues})} repositories, "
+            f"{duplicates} duplicates, {stats['secondary_limited']} secondary and "
+            f"{stats['rate_limited']} primary rate limits, {stats['errors']} server errors",
+            flush=True,
+        )
+
+
+if __name__ == "__main__":
+    main()
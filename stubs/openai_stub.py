@@ -0,0 +1,126 @@
+"""
+Stand-in for the OpenAI Responses API, for load testing the GPT stage offline.
+
+Start it with
+    python stubs/openai_stub.py --port 8000 --latency 2 --error-rate 0.2
+and point the grader at it in .env:
+    OPENAI_BASE_URL=http://localhost:8000/v1
+    OPENAI_API_KEY=stub
+
+Every POST to /v1/responses waits --latency seconds (plus up to --jitter) and
+answers with a short canned analysis. A fraction --error-rate of the requests is
+refused with 429 and a Retry-After header, to exercise the grader's backoff.
+"""
+
+import argparse
+import json
+import random
+import signal
+import sys
+import threading
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+stats = {"requests": 0, "rate_limited": 0, "in_flight": 0, "max_in_flight": 0}
+stats_lock = threading.Lock()
+
+
+class ResponsesHandler(BaseHTTPRequestHandler):
+    def do_POST(self):
+        body = self.rfile.read(int(self.headers.get("Content-Length", 0)))
+        if not self.path.rstrip("/").endswith("/responses"):
+            self.send_json(404, {"error": {"message": f"Unknown path {self.path}"}})
+            return
+        with stats_lock:
+            stats["requests"] += 1
+            request_number = stats["requests"]
+            rate_limited = random.random() < self.server.error_rate
+            if rate_limited:
+                stats["rate_limited"] += 1
+            else:
+                stats["in_flight"] += 1
+                stats["max_in_flight"] = max(stats["max_in_flight"], stats["in_flight"])
+        if rate_limited:
+            self.send_json(
+                429,
+                {"error": {"message": "Rate limit reached", "type": "rate_limit_exceeded"}},
+                {"Retry-After": f"{self.server.retry_after:g}"},
+            )
+            return
+        try:
+            time.sleep(self.server.latency + random.uniform(0, self.server.jitter))
+            try:
+                model = json.loads(body).get("model", "stub")
+            except ValueError:
+                model = "stub"
+            text = f"Stubbsvar {request_number}: koden ser bra ut, fortsätt så."
+            self.send_json(
+                200,
+                {
+                    "id": f"resp_stub_{request_number}",
+                    "object": "response",
+                    "created_at": int(time.time()),
+                    "status": "completed",
+                    "model": model,
+                    "output": [
+                        {
+                            "id": f"msg_stub_{request_number}",
+                            "type": "message",
+                            "role": "assistant",
+                            "status": "completed",
+                            "content": [
+                                {"type": "output_text", "text": text, "annotations": []}
+                            ],
+                        }
+                    ],
+                    "usage": {"input_tokens": 0, "output_tokens": 0, "total_tokens": 0},
+                },
+            )
+        finally:
+            with stats_lock:
+                stats["in_flight"] -= 1
+
+    def send_json(self, status, payload, headers=None):
+        data = json.dumps(payload).encode("utf-8")
+        self.send_response(status)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(data)))
+        for name, value in (headers or {}).items():
+            self.send_header(name, value)
+        self.end_headers()
+        self.wfile.write(data)
+
+    def log_message(self, format, *args):
+        pass
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.strip().splitlines()[0])
+    parser.add_argument("--port", type=int, default=8000)
+    parser.add_argument("--latency", type=float, default=1.0, help="seconds per response")
+    parser.add_argument("--jitter", type=float, default=0.5, help="extra random seconds")
+    parser.add_argument("--error-rate", type=float, default=0.0, help="fraction answered with 429")
+    parser.add_argument("--retry-after", type=float, default=1.0, help="Retry-After of a 429")
+    options = parser.parse_args()
+
+    server = ThreadingHTTPServer(("127.0.0.1", options.port), ResponsesHandler)
+    server.latency = options.latency
+    server.jitter = options.jitter
+    server.error_rate = options.error_rate
+    server.retry_after = options.retry_after
+    print(f"OpenAI stub listening on http://127.0.0.1:{options.port}/v1", flush=True)
+    signal.signal(signal.SIGTERM, lambda signum, frame: sys.exit(0))
+    try:
+        server.serve_forever()
+    except KeyboardInterrupt:
+        pass
+    finally:
+        print(
+            f"{stats['requests']} requests, {stats['rate_limited']} rate limited, "
+            f"at most {stats['max_in_flight']} in flight",
+            flush=True,
+        )
+
+
+if __name__ == "__main__":
+    main()